@@ -0,0 +1,117 @@
+package com.hacktusdynamics.android.mobileconference;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows the loaded pages of conferences. The list of items is never modified in place, appending
+ * a page or applying a reload replaces it, so a snapshot handed to a background task stays valid.
+ */
+public class ConferenceAdapter extends RecyclerView.Adapter<ConferenceAdapter.ViewHolder> {
+    private List<ConferenceItem> items = Collections.emptyList();
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        private final TextView nameView;
+        private final TextView detailsView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            nameView = (TextView) itemView.findViewById(R.id.conference_name);
+            detailsView = (TextView) itemView.findViewById(R.id.conference_details);
+        }
+    }
+
+    /**
+     * Compares two snapshots of the list, conferences are matched by their websafe key.
+     */
+    static class DiffCallback extends DiffUtil.Callback {
+        private final List<ConferenceItem> oldItems;
+        private final List<ConferenceItem> newItems;
+
+        DiffCallback(List<ConferenceItem> oldItems, List<ConferenceItem> newItems) {
+            this.oldItems = oldItems;
+            this.newItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldItems.get(oldItemPosition).getWebsafeKey()
+                    .equals(newItems.get(newItemPosition).getWebsafeKey());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldItems.get(oldItemPosition).hasSameContents(newItems.get(newItemPosition));
+        }
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_conference, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        ConferenceItem item = items.get(position);
+        holder.nameView.setText(item.getName());
+        holder.detailsView.setText(item.getDetails());
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    /**
+     * Returns the current snapshot of the items, it must not be modified.
+     */
+    public List<ConferenceItem> getItems() {
+        return items;
+    }
+
+    /**
+     * Adds the next page at the end of the list.
+     */
+    public void appendPage(List<ConferenceItem> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        List<ConferenceItem> appended = new ArrayList<>(items.size() + page.size());
+        appended.addAll(items);
+        appended.addAll(page);
+        int start = items.size();
+        items = appended;
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    /**
+     * Replaces the items with a reloaded list.
+     *
+     * @param newItems The reloaded items.
+     * @param diff The difference between the current items and newItems, computed off the main thread.
+     */
+    public void replaceItems(List<ConferenceItem> newItems, DiffUtil.DiffResult diff) {
+        items = newItems;
+        diff.dispatchUpdatesTo(this);
+    }
+}
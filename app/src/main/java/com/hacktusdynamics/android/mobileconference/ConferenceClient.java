@@ -0,0 +1,32 @@
+package com.hacktusdynamics.android.mobileconference;
+
+import com.google.api.client.extensions.android.http.AndroidHttp;
+import com.google.api.client.extensions.android.json.AndroidJsonFactory;
+
+import endpoints.backend.conference.Conference;
+
+/**
+ * Holds the client of the Conference API of the backend.
+ */
+public final class ConferenceClient {
+    private static final String ROOT_URL = "https://mobile-conference.appspot.com/_ah/api/";
+    private static final String APPLICATION_NAME = "MobileConference";
+
+    private static Conference api;
+
+    /** Just making the default constructor private. */
+    private ConferenceClient() {}
+
+    /**
+     * Returns the client for the calls which do not need a signed in user.
+     */
+    public static synchronized Conference get() {
+        if (api == null) {
+            api = new Conference.Builder(AndroidHttp.newCompatibleTransport(), new AndroidJsonFactory(), null)
+                    .setRootUrl(ROOT_URL)
+                    .setApplicationName(APPLICATION_NAME)
+                    .build();
+        }
+        return api;
+    }
+}
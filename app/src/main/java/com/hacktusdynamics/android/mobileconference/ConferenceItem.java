@@ -0,0 +1,74 @@
+package com.hacktusdynamics.android.mobileconference;
+
+import android.content.res.Resources;
+import android.text.TextUtils;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+/**
+ * A row of the conference list. The texts are prepared when the row is read from the
+ * ConferenceStore, off the main thread, so binding a row while scrolling only sets them.
+ */
+public final class ConferenceItem {
+    private final String websafeKey; /** String version of the key of the conference */
+    private final String name; /** Name of the conference, the first line of the row */
+    private final String details; /** City, start date and free seats, the second line of the row */
+    private final long lastModified; /** Time of the last save on the backend, tells a changed row apart */
+
+    public ConferenceItem(String websafeKey, String name, String details, long lastModified) {
+        this.websafeKey = websafeKey;
+        this.name = name;
+        this.details = details;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Builds the details line of a row.
+     *
+     * @param resources The resources holding the texts of the line.
+     * @param city The city of the conference, may be null.
+     * @param startDate The start date in millis, null when it is not known.
+     * @param seatsAvailable The number of free seats.
+     * @param dateFormat The format of the start date, not shared between threads.
+     * @return The details line.
+     */
+    static String formatDetails(Resources resources, String city, Long startDate, int seatsAvailable,
+                                DateFormat dateFormat) {
+        String details = TextUtils.isEmpty(city) ? null : city;
+        if (startDate != null) {
+            details = join(resources, details, dateFormat.format(new Date(startDate)));
+        }
+        String seats = resources.getQuantityString(R.plurals.conference_seats_left, seatsAvailable, seatsAvailable);
+        return join(resources, details, seats);
+    }
+
+    private static String join(Resources resources, String first, String second) {
+        return first == null ? second : resources.getString(R.string.conference_details_join, first, second);
+    }
+
+    public String getWebsafeKey() {
+        return websafeKey;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Tells whether the other item shows the same conference in the same state.
+     */
+    public boolean hasSameContents(ConferenceItem other) {
+        return lastModified == other.lastModified
+                && TextUtils.equals(name, other.name)
+                && TextUtils.equals(details, other.details);
+    }
+}
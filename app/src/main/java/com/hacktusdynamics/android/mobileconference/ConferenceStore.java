@@ -0,0 +1,177 @@
+package com.hacktusdynamics.android.mobileconference;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import com.google.api.client.util.DateTime;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import endpoints.backend.conference.model.Conference;
+
+/**
+ * Keeps the conferences on the device, so that the lists are shown right away and work offline.
+ * ConferenceSync brings the store up to date with the conferences changed on the backend since
+ * the watermark of the last sync.
+ */
+public class ConferenceStore extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "conferences.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_CONFERENCES = "conferences";
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_WEBSAFE_KEY = "websafe_key";
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_DESCRIPTION = "description";
+    public static final String COLUMN_TOPICS = "topics";
+    public static final String COLUMN_CITY = "city";
+    public static final String COLUMN_START_DATE = "start_date";
+    public static final String COLUMN_END_DATE = "end_date";
+    public static final String COLUMN_MAX_ATTENDEES = "max_attendees";
+    public static final String COLUMN_SEATS_AVAILABLE = "seats_available";
+    public static final String COLUMN_ORGANIZER = "organizer_display_name";
+    public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+    /** The columns read by queryConferences, in the order they are read. */
+    private static final String[] LIST_COLUMNS = {COLUMN_WEBSAFE_KEY, COLUMN_NAME, COLUMN_CITY,
+            COLUMN_START_DATE, COLUMN_SEATS_AVAILABLE, COLUMN_LAST_MODIFIED};
+
+    /** Holds the watermark of the last sync in its single row. */
+    private static final String TABLE_SYNC = "sync";
+    private static final String COLUMN_WATERMARK = "watermark";
+
+    /** Separates the topics in COLUMN_TOPICS. */
+    private static final String TOPIC_SEPARATOR = "\n";
+
+    private static ConferenceStore instance;
+
+    private final Resources resources; /** Texts of the rows built by queryConferences */
+
+    public static synchronized ConferenceStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ConferenceStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ConferenceStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        resources = context.getResources();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_CONFERENCES + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_WEBSAFE_KEY + " TEXT NOT NULL UNIQUE, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_DESCRIPTION + " TEXT, "
+                + COLUMN_TOPICS + " TEXT, "
+                + COLUMN_CITY + " TEXT, "
+                + COLUMN_START_DATE + " INTEGER, "
+                + COLUMN_END_DATE + " INTEGER, "
+                + COLUMN_MAX_ATTENDEES + " INTEGER, "
+                + COLUMN_SEATS_AVAILABLE + " INTEGER, "
+                + COLUMN_ORGANIZER + " TEXT, "
+                + COLUMN_LAST_MODIFIED + " INTEGER)");
+        db.execSQL("CREATE INDEX conferences_start_date ON " + TABLE_CONFERENCES
+                + " (" + COLUMN_START_DATE + ", " + COLUMN_NAME + ")");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC + " (" + COLUMN_WATERMARK + " INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The store is only a copy of the backend, the next sync downloads everything again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CONFERENCES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC);
+        onCreate(db);
+    }
+
+    /**
+     * Returns a page of the conferences, the earliest first. Has to be called off the main thread.
+     *
+     * @param offset The number of conferences before the page.
+     * @param limit The maximum number of conferences in the page.
+     * @return The conferences of the page, fewer than limit at the end.
+     */
+    public List<ConferenceItem> queryConferences(int offset, int limit) {
+        Cursor cursor = getReadableDatabase().query(TABLE_CONFERENCES, LIST_COLUMNS, null, null, null, null,
+                COLUMN_START_DATE + ", " + COLUMN_NAME + ", " + COLUMN_WEBSAFE_KEY, offset + "," + limit);
+        try {
+            DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM);
+            List<ConferenceItem> items = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                Long startDate = cursor.isNull(3) ? null : cursor.getLong(3);
+                String details = ConferenceItem.formatDetails(resources, cursor.getString(2), startDate,
+                        cursor.getInt(4), dateFormat);
+                items.add(new ConferenceItem(cursor.getString(0), cursor.getString(1), details, cursor.getLong(5)));
+            }
+            return items;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the watermark of the last complete sync, null before the first one.
+     */
+    public Long getWatermark() {
+        Cursor cursor = getReadableDatabase().query(TABLE_SYNC, new String[] {COLUMN_WATERMARK},
+                null, null, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Inserts or replaces the given conferences in a single transaction.
+     *
+     * @param conferences The conferences received from the backend.
+     * @param watermark The watermark of a complete sync, null while there are more pages to come.
+     */
+    public void saveConferences(List<Conference> conferences, Long watermark) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (Conference conference : conferences) {
+                values.clear();
+                values.put(COLUMN_WEBSAFE_KEY, conference.getWebsafeKey());
+                values.put(COLUMN_NAME, conference.getName());
+                values.put(COLUMN_DESCRIPTION, conference.getDescription());
+                values.put(COLUMN_TOPICS, conference.getTopics() == null ? null
+                        : TextUtils.join(TOPIC_SEPARATOR, conference.getTopics()));
+                values.put(COLUMN_CITY, conference.getCity());
+                values.put(COLUMN_START_DATE, millis(conference.getStartDate()));
+                values.put(COLUMN_END_DATE, millis(conference.getEndDate()));
+                values.put(COLUMN_MAX_ATTENDEES, conference.getMaxAttendees());
+                values.put(COLUMN_SEATS_AVAILABLE, conference.getSeatsAvailable());
+                values.put(COLUMN_ORGANIZER, conference.getOrganizerDisplayName());
+                values.put(COLUMN_LAST_MODIFIED, millis(conference.getLastModified()));
+                db.insertWithOnConflict(TABLE_CONFERENCES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            if (watermark != null) {
+                db.delete(TABLE_SYNC, null, null);
+                values.clear();
+                values.put(COLUMN_WATERMARK, watermark);
+                db.insert(TABLE_SYNC, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static Long millis(DateTime dateTime) {
+        return dateTime == null ? null : dateTime.getValue();
+    }
+}
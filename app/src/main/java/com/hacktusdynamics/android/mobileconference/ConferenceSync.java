@@ -0,0 +1,46 @@
+package com.hacktusdynamics.android.mobileconference;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import endpoints.backend.conference.model.Conference;
+import endpoints.backend.conference.model.ConferenceChanges;
+
+/**
+ * Downloads the conferences changed since the last sync into the ConferenceStore.
+ */
+public final class ConferenceSync {
+    private static final int PAGE_SIZE = 100;
+
+    /** Just making the default constructor private. */
+    private ConferenceSync() {}
+
+    /**
+     * Reads all the pages of changes since the watermark of the store and saves them, the new
+     * watermark is saved with the last page. An interrupted sync starts over from the old
+     * watermark, saving the same conferences again does no harm. Has to be called off the main thread.
+     *
+     * @param store The store to bring up to date.
+     * @return The number of conferences received.
+     * @throws IOException when the backend can not be reached.
+     */
+    public static int sync(ConferenceStore store) throws IOException {
+        Long since = store.getWatermark();
+        String cursor = null;
+        int received = 0;
+        do {
+            ConferenceChanges changes = ConferenceClient.get().getConferenceChanges()
+                    .setSince(since)
+                    .setPageSize(PAGE_SIZE)
+                    .setCursor(cursor)
+                    .execute();
+            List<Conference> conferences = changes.getItems() == null
+                    ? Collections.<Conference>emptyList() : changes.getItems();
+            store.saveConferences(conferences, changes.getWatermark());
+            received += conferences.size();
+            cursor = changes.getNextPageToken();
+        } while (cursor != null);
+        return received;
+    }
+}
@@ -1,13 +1,39 @@
 package com.hacktusdynamics.android.mobileconference;
 
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.View;
 
+import java.io.IOException;
+import java.util.List;
+
 public class ShowConferencesActivity extends AppCompatActivity {
+    private static final String TAG = "ShowConferences";
+
+    /** Number of conferences read from the store at a time. */
+    private static final int PAGE_SIZE = 50;
+
+    /** The next page is read when the last visible row is this close to the end of the loaded ones. */
+    private static final int PREFETCH_DISTANCE = 20;
+
+    private ConferenceStore store;
+    private ConferenceAdapter adapter;
+    private LinearLayoutManager layoutManager;
+    private RecyclerView recyclerView;
+    private View emptyView;
+
+    private boolean loading; /** A page load or a reload is running, only one at a time */
+    private boolean reloadPending; /** A sync has changed the store while loading */
+    private boolean endReached; /** The last page has been loaded */
+    private boolean destroyed;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -16,15 +42,148 @@ public class ShowConferencesActivity extends AppCompatActivity {
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
+        store = ConferenceStore.getInstance(this);
+        adapter = new ConferenceAdapter();
+        layoutManager = new LinearLayoutManager(this);
+        emptyView = findViewById(R.id.conference_list_empty);
+        recyclerView = (RecyclerView) findViewById(R.id.conference_list);
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                Snackbar.make(view, "Replace with your own action", Snackbar.LENGTH_LONG)
-                        .setAction("Action", null).show();
+                new SyncTask().execute();
             }
         });
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        // Show what is stored right away, then fetch what has changed since the last sync
+        loadNextPage();
+        new SyncTask().execute();
+    }
+
+    @Override
+    protected void onDestroy() {
+        destroyed = true;
+        super.onDestroy();
+    }
+
+    private void loadNextPage() {
+        if (loading || endReached) {
+            return;
+        }
+        loading = true;
+        new LoadPageTask(adapter.getItemCount()).execute();
+    }
+
+    private void reload() {
+        if (loading) {
+            reloadPending = true;
+            return;
+        }
+        loading = true;
+        endReached = false;
+        new ReloadTask(adapter.getItems()).execute();
+    }
+
+    private void onLoaded() {
+        loading = false;
+        emptyView.setVisibility(adapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        if (reloadPending) {
+            reloadPending = false;
+            reload();
+        }
+    }
+
+    /** Reads the page after the loaded conferences. */
+    private class LoadPageTask extends AsyncTask<Void, Void, List<ConferenceItem>> {
+        private final int offset;
+
+        LoadPageTask(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        protected List<ConferenceItem> doInBackground(Void... params) {
+            return store.queryConferences(offset, PAGE_SIZE);
+        }
+
+        @Override
+        protected void onPostExecute(List<ConferenceItem> page) {
+            if (destroyed) {
+                return;
+            }
+            endReached = page.size() < PAGE_SIZE;
+            adapter.appendPage(page);
+            onLoaded();
+        }
+    }
+
+    /**
+     * Reads the loaded range of conferences again after a sync, and updates only the rows which
+     * have changed. The difference is computed here in the background, not on the main thread.
+     */
+    private class ReloadTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
+        private final List<ConferenceItem> oldItems;
+        private final int limit;
+        private List<ConferenceItem> newItems;
+
+        ReloadTask(List<ConferenceItem> oldItems) {
+            this.oldItems = oldItems;
+            this.limit = Math.max(oldItems.size(), PAGE_SIZE);
+        }
+
+        @Override
+        protected DiffUtil.DiffResult doInBackground(Void... params) {
+            newItems = store.queryConferences(0, limit);
+            return DiffUtil.calculateDiff(new ConferenceAdapter.DiffCallback(oldItems, newItems));
+        }
+
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult diff) {
+            if (destroyed) {
+                return;
+            }
+            endReached = newItems.size() < limit;
+            adapter.replaceItems(newItems, diff);
+            onLoaded();
+        }
     }
 
+    /** Brings the store up to date with the backend and reloads the list when anything changed. */
+    private class SyncTask extends AsyncTask<Void, Void, Integer> {
+        @Override
+        protected Integer doInBackground(Void... params) {
+            try {
+                return ConferenceSync.sync(store);
+            } catch (IOException e) {
+                Log.w(TAG, "Conference sync failed", e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Integer received) {
+            if (destroyed) {
+                return;
+            }
+            if (received == null) {
+                Snackbar.make(recyclerView, R.string.sync_failed, Snackbar.LENGTH_LONG).show();
+            } else if (received > 0) {
+                reload();
+            }
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package endpoints.backend.benchmark;
+
+import com.google.api.server.spi.response.CollectionResponse;
+import com.google.appengine.api.users.User;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import endpoints.backend.domain.Conference;
+import endpoints.backend.form.ConferenceImportForm;
+import endpoints.backend.form.ConferenceQueryForm;
+import endpoints.backend.spi.ConferenceApi;
+
+/**
+ * Whole ConferenceApi calls against the local datastore and memcache, with the given number of
+ * conferences already created. Every call gets its own Objectify session, as a request does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConferenceApiBenchmark {
+    @Param({"1000"})
+    private int conferences;
+
+    private final LocalServices services = new LocalServices();
+    private final ConferenceApi conferenceApi = new ConferenceApi();
+    private final Random random = new Random(42);
+    private final User organizer = Fixtures.user(0);
+    private final User attendee = Fixtures.user(1);
+    private final List<String> conferenceKeys = new ArrayList<>();
+    private int created;
+
+    @Setup
+    public void setUp() throws Exception {
+        services.setUp();
+        for (int from = 0; from < conferences; from += 1000) {
+            try (Closeable session = ObjectifyService.begin()) {
+                int count = Math.min(1000, conferences - from);
+                for (ConferenceApi.ImportOutcome outcome : conferenceApi.importConferences(organizer,
+                        new ConferenceImportForm(Fixtures.conferenceForms(from, count, 100)))) {
+                    conferenceKeys.add(outcome.getWebsafeConferenceKey());
+                }
+            }
+        }
+        created = conferences;
+    }
+
+    @TearDown
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    private String randomConferenceKey() {
+        return conferenceKeys.get(random.nextInt(conferenceKeys.size()));
+    }
+
+    @Benchmark
+    public Conference createConference() throws Exception {
+        try (Closeable session = ObjectifyService.begin()) {
+            return conferenceApi.createConference(organizer, Fixtures.conferenceForm(created++, 100));
+        }
+    }
+
+    @Benchmark
+    public Conference getConference() throws Exception {
+        try (Closeable session = ObjectifyService.begin()) {
+            return conferenceApi.getConference(randomConferenceKey(), null);
+        }
+    }
+
+    /** The first page is served from ConferenceCache after the first call. */
+    @Benchmark
+    public CollectionResponse<Conference> queryConferencesPage() throws Exception {
+        try (Closeable session = ObjectifyService.begin()) {
+            return conferenceApi.queryConferencesPage(new ConferenceQueryForm(), 20, null);
+        }
+    }
+
+    @Benchmark
+    public List<Conference> queryConferencesInCity() throws Exception {
+        try (Closeable session = ObjectifyService.begin()) {
+            return conferenceApi.queryConferences(new ConferenceQueryForm().filter(new ConferenceQueryForm.Filter(
+                    ConferenceQueryForm.Field.CITY, ConferenceQueryForm.Operator.EQ, "London")));
+        }
+    }
+
+    @Benchmark
+    public boolean registerAndUnregister() throws Exception {
+        String conferenceKey = randomConferenceKey();
+        try (Closeable session = ObjectifyService.begin()) {
+            conferenceApi.registerForConference(attendee, conferenceKey);
+        }
+        try (Closeable session = ObjectifyService.begin()) {
+            return conferenceApi.unregisterFromConference(attendee, conferenceKey).getResult();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package endpoints.backend.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import endpoints.backend.domain.Conference;
+import endpoints.backend.form.ConferenceForm;
+
+/**
+ * Creating a Conference from a form and updating it, which every create and import goes through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConferenceBenchmark {
+    private final LocalServices services = new LocalServices();
+    private ConferenceForm form;
+    private ConferenceForm updateForm;
+    private Conference conference;
+
+    @Setup
+    public void setUp() {
+        services.setUp();
+        form = Fixtures.conferenceForm(1, 100);
+        updateForm = Fixtures.conferenceForm(2, 200);
+        conference = new Conference(1L, "organizer", form);
+    }
+
+    @TearDown
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    @Benchmark
+    public Conference construct() {
+        return new Conference(1L, "organizer", form);
+    }
+
+    @Benchmark
+    public Conference updateWithConferenceForm() {
+        conference.updateWithConferenceForm(updateForm);
+        return conference;
+    }
+}
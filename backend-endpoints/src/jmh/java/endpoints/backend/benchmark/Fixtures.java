@@ -0,0 +1,96 @@
+package endpoints.backend.benchmark;
+
+import com.google.appengine.api.users.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import endpoints.backend.form.ConferenceForm;
+
+/**
+ * Generates conferences and users for the benchmarks, the same ones on every run.
+ */
+final class Fixtures {
+    private static final List<String> CITIES = Arrays.asList(
+            "London", "Paris", "Tokyo", "San Francisco", "Istanbul", "Berlin", "New York", "Sydney");
+
+    private static final List<String> TOPICS = Arrays.asList(
+            "Java", "Android", "Cloud", "Web", "Security", "Databases", "Design", "Testing");
+
+    private static final List<String> WORDS = Arrays.asList(
+            "conference", "summit", "developer", "mobile", "platform", "scalable", "distributed",
+            "functional", "reactive", "performance", "engineering", "community", "workshop",
+            "keynote", "future", "practice", "architecture", "open", "source", "data");
+
+    private static final long START = 1483228800000L; // 2017-01-01T00:00:00Z
+
+    /** Just making the default constructor private. */
+    private Fixtures() {}
+
+    /**
+     * Returns the form of the i-th conference.
+     */
+    static ConferenceForm conferenceForm(int i, int maxAttendees) {
+        Random random = new Random(i);
+        String name = words(random, 3) + " " + i;
+        String description = words(random, 20);
+        List<String> topics = Arrays.asList(pick(random, TOPICS), pick(random, TOPICS));
+        Date startDate = new Date(START + TimeUnit.DAYS.toMillis(random.nextInt(365)));
+        Date endDate = new Date(startDate.getTime() + TimeUnit.DAYS.toMillis(random.nextInt(4)));
+        return new ConferenceForm(name, description, topics, pick(random, CITIES), startDate, endDate,
+                maxAttendees);
+    }
+
+    static List<ConferenceForm> conferenceForms(int from, int count, int maxAttendees) {
+        List<ConferenceForm> forms = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            forms.add(conferenceForm(i, maxAttendees));
+        }
+        return forms;
+    }
+
+    /**
+     * Returns the i-th user, with a userId as the web clients have one.
+     */
+    static User user(int i) {
+        return new User("user" + i + "@example.com", "example.com", "user" + i);
+    }
+
+    /**
+     * Returns the i-th user as an Android client sends it, without a userId.
+     */
+    static User androidUser(int i) {
+        return new User("android" + i + "@example.com", "example.com");
+    }
+
+    /**
+     * Returns a search query of the given number of word prefixes.
+     */
+    static String searchQuery(Random random, int terms) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            String word = pick(random, WORDS);
+            sb.append(word, 0, Math.min(word.length(), 4)).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(pick(random, WORDS));
+        }
+        return sb.toString();
+    }
+
+    private static String pick(Random random, List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
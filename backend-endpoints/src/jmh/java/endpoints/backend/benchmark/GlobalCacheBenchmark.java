@@ -0,0 +1,128 @@
+package endpoints.backend.benchmark;
+
+import com.google.appengine.api.users.User;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.impl.EntityMemcacheStats;
+import com.googlecode.objectify.util.Closeable;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import endpoints.backend.domain.Profile;
+import endpoints.backend.form.ProfileForm.TeeShirtSize;
+import endpoints.backend.service.ApiMetrics;
+import endpoints.backend.service.OfyService;
+import endpoints.backend.spi.ConferenceApi;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * getProfile for the given number of users with Profiles in the Objectify global cache. Every
+ * call gets its own Objectify session, as a request does, so the profile comes from the global
+ * cache or from the datastore.
+ *
+ * Next to the latency, the counters report per iteration the calls, the gets which reached the
+ * datastore and the hits and misses of the global cache for Profiles. The gets divided by the
+ * calls are the datastore reads per request, about zero once every profile has been read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GlobalCacheBenchmark {
+    private static final String METHOD = "GlobalCacheBenchmark.getProfile";
+
+    @Param({"1000"})
+    private int users;
+
+    private final LocalServices services = new LocalServices();
+    private final ConferenceApi conferenceApi = new ConferenceApi();
+    private final Random random = new Random(42);
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long calls;
+        public long datastoreGets;
+        public long cacheHits;
+        public long cacheMisses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            calls = 0;
+            datastoreGets = 0;
+            cacheHits = 0;
+            cacheMisses = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        services.setUp();
+        try (Closeable session = ObjectifyService.begin()) {
+            List<Profile> profiles = new ArrayList<>(users);
+            for (int i = 0; i < users; i++) {
+                User user = Fixtures.user(i);
+                profiles.add(new Profile(user.getUserId(), "User " + i, user.getEmail(), TeeShirtSize.M));
+            }
+            ofy().save().entities(profiles).now();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    @Benchmark
+    public Profile getProfile(Counters counters) throws Exception {
+        long gets = datastoreGets();
+        EntityMemcacheStats.Stat cache = profileCacheStats();
+        long hits = cache == null ? 0 : cache.getHits();
+        long misses = cache == null ? 0 : cache.getMisses();
+
+        Profile profile;
+        long start = System.nanoTime();
+        ApiMetrics.startCall();
+        try (Closeable session = ObjectifyService.begin()) {
+            profile = conferenceApi.getProfile(Fixtures.user(random.nextInt(users)), null);
+        } finally {
+            ApiMetrics.endCall(METHOD, System.nanoTime() - start, false);
+        }
+
+        cache = profileCacheStats();
+        counters.calls++;
+        counters.datastoreGets += datastoreGets() - gets;
+        counters.cacheHits += cache.getHits() - hits;
+        counters.cacheMisses += cache.getMisses() - misses;
+        return profile;
+    }
+
+    private static long datastoreGets() {
+        ApiMetrics.MethodStats stats = ApiMetrics.getMethods().get(METHOD);
+        return stats == null ? 0 : stats.getGets();
+    }
+
+    private static EntityMemcacheStats.Stat profileCacheStats() {
+        return OfyService.globalCacheStats().getStats().get("Profile");
+    }
+}
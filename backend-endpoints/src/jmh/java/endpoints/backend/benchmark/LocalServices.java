@@ -0,0 +1,44 @@
+package endpoints.backend.benchmark;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.apphosting.api.ApiProxy;
+
+import endpoints.backend.service.OfyService;
+
+/**
+ * The App Engine local datastore, memcache and task queue for the benchmarks, queued tasks are not run.
+ *
+ * The datastore is a High Replication one, as in production, and applies every write immediately,
+ * so queries see the entities saved just before.
+ * The services are bound to the thread which sets them up, the benchmark threads have to be
+ * attached to them.
+ */
+final class LocalServices {
+    private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+            new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+            new LocalMemcacheServiceTestConfig(),
+            new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private ApiProxy.Environment environment;
+
+    void setUp() {
+        helper.setUp();
+        environment = ApiProxy.getCurrentEnvironment();
+        // Registers the entities
+        OfyService.factory();
+    }
+
+    /**
+     * Makes the services available to the current thread.
+     */
+    void attachCurrentThread() {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+    }
+
+    void tearDown() {
+        helper.tearDown();
+    }
+}
@@ -0,0 +1,83 @@
+package endpoints.backend.benchmark;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import endpoints.backend.form.ConferenceImportForm;
+import endpoints.backend.service.SearchIndexService;
+import endpoints.backend.spi.ConferenceApi;
+
+/**
+ * Latency of SearchIndexService.search over the posting index of the given number of
+ * conferences, without the cached results. Indexing 100k conferences into the local datastore
+ * takes a few minutes and several GB of heap, -p conferences=1000 gives a quick run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SearchBenchmark {
+    private static final int IMPORT_SIZE = 1000;
+
+    @Param({"1000", "100000"})
+    private int conferences;
+
+    @Param({"1", "2"})
+    private int terms;
+
+    private final LocalServices services = new LocalServices();
+    private final Random random = new Random(42);
+    private String query;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services.setUp();
+        ConferenceApi conferenceApi = new ConferenceApi();
+        for (int from = 0; from < conferences; from += IMPORT_SIZE) {
+            try (Closeable session = ObjectifyService.begin()) {
+                conferenceApi.importConferences(Fixtures.user(0), new ConferenceImportForm(
+                        Fixtures.conferenceForms(from, Math.min(IMPORT_SIZE, conferences - from), 10)));
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void nextQuery() {
+        query = Fixtures.searchQuery(random, terms);
+        // Every search goes to the index
+        MemcacheServiceFactory.getMemcacheService("Search").clearAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    @Benchmark
+    public List<String> search() {
+        try (Closeable session = ObjectifyService.begin()) {
+            return SearchIndexService.search(query);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package endpoints.backend.benchmark;
+
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import endpoints.backend.domain.Conference;
+import endpoints.backend.service.SeatCounterService;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Booking and giving back a seat of the same conference from several threads, each in its own
+ * transaction against the local datastore, with the seats counted on SeatShards or on the
+ * conference entity itself.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class SeatBookingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedConference {
+        @Param({"true", "false"})
+        private boolean sharded;
+
+        private final LocalServices services = new LocalServices();
+        private Conference conference;
+
+        @Setup
+        public void setUp() {
+            services.setUp();
+            try (Closeable session = ObjectifyService.begin()) {
+                conference = new Conference(1L, "organizer", Fixtures.conferenceForm(1, 1000000));
+                List<Object> entities = new ArrayList<>();
+                if (sharded) {
+                    entities.addAll(SeatCounterService.createShards(conference));
+                }
+                entities.add(conference);
+                ofy().save().entities(entities).now();
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            services.tearDown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BenchmarkThread {
+        @Setup
+        public void setUp(SharedConference shared) {
+            shared.services.attachCurrentThread();
+        }
+    }
+
+    @Benchmark
+    public boolean bookAndGiveBack(SharedConference shared, BenchmarkThread thread) {
+        try (Closeable session = ObjectifyService.begin()) {
+            return SeatCounterService.bookSeats(shared.conference, 1)
+                    && SeatCounterService.giveBackSeats(shared.conference, 1);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package endpoints.backend.benchmark;
+
+import com.google.api.server.spi.config.ApiSerializationConfig;
+import com.google.api.server.spi.response.CollectionResponse;
+import com.google.api.server.spi.response.ServletResponseResultWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import endpoints.backend.domain.CompactConferenceList;
+import endpoints.backend.domain.Conference;
+
+/**
+ * Writing a page of conferences as JSON with the result writer of Endpoints, as a list
+ * endpoint does, one object per conference and in the columns of CompactConferenceList.
+ * The bytes are counted and thrown away, the setup prints the size of both for comparison.
+ * CompactConferenceListTest checks that the columns stay at least twice smaller for the same properties.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"20", "100"})
+    private int conferences;
+
+    private final LocalServices services = new LocalServices();
+    private final CountingOutputStream out = new CountingOutputStream();
+    private HttpServletResponse response;
+    private PrintWriter writer; /** The writer handed out last by the response */
+    private CollectionResponse<Conference> page;
+    private List<Conference> items;
+
+    @Setup
+    public void setUp() {
+        services.setUp();
+        items = new ArrayList<>(conferences);
+        for (int i = 0; i < conferences; i++) {
+            Conference conference = new Conference(i + 1L, "organizer", Fixtures.conferenceForm(i, 100));
+            // As the list endpoints do, so that serializing does not load the organizer
+            conference.attachOrganizer(null);
+            items.add(conference);
+        }
+        page = CollectionResponse.<Conference>builder().setItems(items).setNextPageToken("token").build();
+        response = responseWritingTo();
+
+        try {
+            long objects = writePage();
+            long columns = writeCompactPage();
+            System.out.printf("%d conferences: %d bytes as objects, %d bytes in columns (%.1fx smaller)%n",
+                    conferences, objects, columns, (double) objects / columns);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    @Benchmark
+    public long writePage() throws IOException {
+        out.count = 0;
+        new ServletResponseResultWriter(response, new ApiSerializationConfig()).write(page);
+        writer.flush();
+        return out.count;
+    }
+
+    /**
+     * Lays out the page in columns for every call, as queryConferencesCompact does. The websafe keys
+     * are memoized by the conferences after the first call, as they are in the pages cached by
+     * ConferenceCache.
+     */
+    @Benchmark
+    public long writeCompactPage() throws IOException {
+        out.count = 0;
+        new ServletResponseResultWriter(response, new ApiSerializationConfig())
+                .write(new CompactConferenceList(items, "token"));
+        writer.flush();
+        return out.count;
+    }
+
+    /** Counts the bytes written and drops them. */
+    private static class CountingOutputStream extends ServletOutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Returns a response writing its body to the counting stream, all the other methods do nothing.
+     * The writer buffers, the benchmarks flush it so that all the bytes are counted.
+     */
+    private HttpServletResponse responseWritingTo() {
+        return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getOutputStream":
+                                return out;
+                            case "getWriter":
+                                // The writer may be closed after the response, every response gets a new one
+                                writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                                return writer;
+                            case "getCharacterEncoding":
+                                return "UTF-8";
+                            default:
+                                Class<?> type = method.getReturnType();
+                                if (type == boolean.class) {
+                                    return false;
+                                }
+                                if (type == int.class) {
+                                    return 0;
+                                }
+                                return null;
+                        }
+                    }
+                });
+    }
+}
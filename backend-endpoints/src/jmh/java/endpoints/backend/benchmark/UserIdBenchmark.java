@@ -0,0 +1,143 @@
+package endpoints.backend.benchmark;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.users.User;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import endpoints.backend.domain.AppEngineUser;
+import endpoints.backend.service.UserIdService;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Cost of UserIdService.getUserId for Android users, who come without a userId, when it is
+ * answered by the in-memory LRU map, by memcache or by the datastore.
+ *
+ * The local datastore does not fill in the userId of a stored User as App Engine does, so the
+ * AppEngineUsers are saved with their userId up front. The memcache and datastore cases cycle
+ * through twice as many users as the LRU map keeps, so every call misses it. The counters report
+ * per iteration the calls and where they were answered, the datastore reads divided by the calls
+ * are the reads per request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserIdBenchmark {
+    /** Twice the MAX_LOCAL_ENTRIES of UserIdService. */
+    private static final int USERS = 20000;
+
+    private final LocalServices services = new LocalServices();
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long calls;
+        public long localHits;
+        public long memcacheHits;
+        public long datastoreReads;
+        public long datastoreWrites;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            calls = 0;
+            localHits = 0;
+            memcacheHits = 0;
+            datastoreReads = 0;
+            datastoreWrites = 0;
+        }
+    }
+
+    /** Empties memcache before every call, outside of the measured time. */
+    @State(Scope.Thread)
+    public static class EmptyMemcache {
+        @Setup(Level.Invocation)
+        public void clear() {
+            MemcacheServiceFactory.getMemcacheService().clearAll();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        services.setUp();
+        try (Closeable session = ObjectifyService.begin()) {
+            List<AppEngineUser> appEngineUsers = new ArrayList<>(USERS);
+            for (int i = 0; i < USERS; i++) {
+                User user = Fixtures.androidUser(i);
+                appEngineUsers.add(new AppEngineUser(new User(user.getEmail(), user.getAuthDomain(), "android" + i)));
+            }
+            ofy().save().entities(appEngineUsers).now();
+            // Puts every userId into memcache
+            for (int i = 0; i < USERS; i++) {
+                UserIdService.getUserId(Fixtures.androidUser(i));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    /** The same user every time. */
+    @Benchmark
+    public String localHit(Counters counters) {
+        return getUserId(Fixtures.androidUser(0), counters);
+    }
+
+    @Benchmark
+    public String memcacheHit(Counters counters) {
+        return getUserId(nextUser(), counters);
+    }
+
+    @Benchmark
+    public String datastoreRead(EmptyMemcache emptyMemcache, Counters counters) {
+        return getUserId(nextUser(), counters);
+    }
+
+    private User nextUser() {
+        next = (next + 1) % USERS;
+        return Fixtures.androidUser(next);
+    }
+
+    private static String getUserId(User user, Counters counters) {
+        long localHits = UserIdService.getLocalHits();
+        long memcacheHits = UserIdService.getMemcacheHits();
+        long datastoreReads = UserIdService.getDatastoreReads();
+        long datastoreWrites = UserIdService.getDatastoreWrites();
+
+        String userId;
+        try (Closeable session = ObjectifyService.begin()) {
+            userId = UserIdService.getUserId(user);
+        }
+
+        counters.calls++;
+        counters.localHits += UserIdService.getLocalHits() - localHits;
+        counters.memcacheHits += UserIdService.getMemcacheHits() - memcacheHits;
+        counters.datastoreReads += UserIdService.getDatastoreReads() - datastoreReads;
+        counters.datastoreWrites += UserIdService.getDatastoreWrites() - datastoreWrites;
+        return userId;
+    }
+}
@@ -0,0 +1,70 @@
+package endpoints.backend.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * The outcomes and the latencies of one kind of operation, shared by all the load threads.
+ */
+class OperationStats {
+    private final String name;
+    private long[] latencies = new long[1024];
+    private int calls;
+    private int rejected;
+    private int errors;
+
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a call.
+     * @param nanos the time the call took.
+     * @param outcome the outcome of the call.
+     */
+    synchronized void record(long nanos, Outcome outcome) {
+        if (calls == latencies.length) {
+            latencies = Arrays.copyOf(latencies, calls * 2);
+        }
+        latencies[calls++] = nanos;
+        if (outcome == Outcome.REJECTED) {
+            rejected++;
+        } else if (outcome == Outcome.ERROR) {
+            errors++;
+        }
+    }
+
+    /** Column headers matching format. */
+    static String header() {
+        return String.format("%-12s %8s %8s %8s %9s %9s %9s %9s %9s",
+                "operation", "calls", "rejected", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+    }
+
+    /**
+     * Formats the totals of a run of the given length as a row of a table.
+     */
+    synchronized String format(double seconds) {
+        long[] sorted = Arrays.copyOf(latencies, calls);
+        Arrays.sort(sorted);
+        return String.format("%-12s %8d %8d %8d %9.1f %9.2f %9.2f %9.2f %9.2f", name, calls, rejected, errors,
+                calls / seconds, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                percentile(sorted, 100));
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /** The outcome of a call. */
+    enum Outcome {
+        /** The call succeeded. */
+        OK,
+        /** The API refused the call as expected under load, e.g. no seats left or already registered. */
+        REJECTED,
+        /** The call failed. */
+        ERROR
+    }
+}
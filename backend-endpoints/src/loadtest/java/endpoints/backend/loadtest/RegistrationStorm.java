@@ -0,0 +1,286 @@
+package endpoints.backend.loadtest;
+
+import com.google.api.server.spi.response.ConflictException;
+import com.google.api.server.spi.response.NotFoundException;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import endpoints.backend.domain.Conference;
+import endpoints.backend.domain.Profile;
+import endpoints.backend.domain.SeatShard;
+import endpoints.backend.form.ConferenceForm;
+import endpoints.backend.form.ConferenceQueryForm;
+import endpoints.backend.form.ProfileForm;
+import endpoints.backend.form.ProfileForm.TeeShirtSize;
+import endpoints.backend.loadtest.OperationStats.Outcome;
+import endpoints.backend.service.OfyService;
+import endpoints.backend.spi.ConferenceApi;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Simulates the opening of the registrations: many users registering for a few conferences at
+ * once, mixed with the other traffic, against ConferenceApi on the local datastore and memcache.
+ *
+ * The arguments are key=value pairs, see DEFAULTS. mix gives the weight of every operation,
+ * e.g. mix=register:90,query:10. At the end it prints the throughput and the latency
+ * percentiles per operation, the number of transactions retried by Objectify, and checks every
+ * conference for overbooking: more registered users than seats, or seats booked without a
+ * registration. The exit code is 1 when there is a violation.
+ */
+public class RegistrationStorm {
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("threads", "32"); // concurrent callers
+        DEFAULTS.put("seconds", "30"); // duration of the storm
+        DEFAULTS.put("users", "5000"); // distinct users calling
+        DEFAULTS.put("conferences", "3"); // conferences everybody registers for
+        DEFAULTS.put("seats", "500"); // maxAttendees of these conferences
+        DEFAULTS.put("mix", "register:70,unregister:10,query:10,profile:5,create:5");
+    }
+
+    private static final List<String> OPERATIONS = Arrays.asList("register", "unregister", "query", "profile", "create");
+
+    /** Objectify logs every optimistic concurrency failure it retries with this message. */
+    private static final String RETRY_MESSAGE = "Optimistic concurrency failure";
+
+    private final ConferenceApi conferenceApi = new ConferenceApi();
+    private final Map<String, OperationStats> stats = new LinkedHashMap<>();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong createdConferences = new AtomicLong();
+    private final List<String> conferenceKeys = new ArrayList<>();
+
+    private final int threads;
+    private final int seconds;
+    private final int users;
+    private final int conferences;
+    private final int seats;
+    private final String[] weightedOperations;
+
+    private RegistrationStorm(Map<String, String> config) {
+        threads = Integer.parseInt(config.get("threads"));
+        seconds = Integer.parseInt(config.get("seconds"));
+        users = Integer.parseInt(config.get("users"));
+        conferences = Integer.parseInt(config.get("conferences"));
+        seats = Integer.parseInt(config.get("seats"));
+
+        // Every operation appears as many times as its weight, a random element picks one
+        List<String> weighted = new ArrayList<>();
+        for (String entry : config.get("mix").split(",")) {
+            String[] operationWeight = entry.split(":");
+            if (!OPERATIONS.contains(operationWeight[0])) {
+                throw new IllegalArgumentException("Unknown operation " + operationWeight[0] + ", use " + OPERATIONS);
+            }
+            for (int i = Integer.parseInt(operationWeight[1]); i > 0; i--) {
+                weighted.add(operationWeight[0]);
+            }
+        }
+        weightedOperations = weighted.toArray(new String[weighted.size()]);
+        for (String operation : OPERATIONS) {
+            stats.put(operation, new OperationStats(operation));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> config = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2 || !DEFAULTS.containsKey(keyValue[0])) {
+                System.err.println("Unknown argument " + arg + ", the arguments are " + DEFAULTS);
+                System.exit(2);
+            }
+            config.put(keyValue[0], keyValue[1]);
+        }
+        System.out.println("Registration storm " + config);
+
+        LocalServiceTestHelper helper = new LocalServiceTestHelper(
+                new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+                new LocalMemcacheServiceTestConfig(),
+                new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+        helper.setUp();
+        int violations;
+        try {
+            violations = new RegistrationStorm(config).run();
+        } finally {
+            helper.tearDown();
+        }
+        System.exit(violations == 0 ? 0 : 1);
+    }
+
+    private int run() throws Exception {
+        OfyService.factory();
+        countRetries();
+        for (int i = 0; i < conferences; i++) {
+            try (Closeable session = ObjectifyService.begin()) {
+                conferenceKeys.add(conferenceApi.createConference(user(0), form("Storm " + i, seats)).getWebsafeKey());
+            }
+        }
+
+        final ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            final Random random = new Random(i);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ApiProxy.setEnvironmentForCurrentThread(environment);
+                    while (System.nanoTime() < deadline) {
+                        call(weightedOperations[random.nextInt(weightedOperations.length)], random);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.println();
+        System.out.println(OperationStats.header());
+        for (OperationStats operationStats : stats.values()) {
+            System.out.println(operationStats.format(elapsed));
+        }
+        System.out.println();
+        System.out.println("Transactions retried: " + retries.get());
+        return checkSeats();
+    }
+
+    /**
+     * Calls an operation as a request would, in its own Objectify session, and records it. Closing
+     * the session completes its pending asynchronous writes, as ObjectifyFilter does after a request.
+     */
+    private void call(String operation, Random random) {
+        User user = user(1 + random.nextInt(users));
+        String conferenceKey = conferenceKeys.get(random.nextInt(conferenceKeys.size()));
+        Outcome outcome = Outcome.OK;
+        long start = System.nanoTime();
+        try (Closeable session = ObjectifyService.begin()) {
+            switch (operation) {
+                case "register":
+                    conferenceApi.registerForConference(user, conferenceKey);
+                    break;
+                case "unregister":
+                    conferenceApi.unregisterFromConference(user, conferenceKey);
+                    break;
+                case "query":
+                    conferenceApi.queryConferences(new ConferenceQueryForm());
+                    break;
+                case "profile":
+                    conferenceApi.saveProfile(user, new ProfileForm(user.getNickname(), TeeShirtSize.M));
+                    break;
+                case "create":
+                    conferenceApi.createConference(user, form("Created " + createdConferences.incrementAndGet(), 100));
+                    break;
+                default:
+                    throw new IllegalStateException(operation);
+            }
+        } catch (ConflictException | NotFoundException e) {
+            outcome = Outcome.REJECTED;
+        } catch (Exception e) {
+            outcome = Outcome.ERROR;
+            System.err.println(operation + " failed: " + e);
+        }
+        stats.get(operation).record(System.nanoTime() - start, outcome);
+    }
+
+    /**
+     * Compares the seats booked on the shards of every storm conference with the registrations
+     * in the profiles.
+     * @return the number of conferences with a violation.
+     */
+    private int checkSeats() {
+        try (Closeable session = ObjectifyService.begin()) {
+            Map<String, Integer> registrations = new HashMap<>();
+            for (Profile profile : ofy().load().type(Profile.class)) {
+                for (String conferenceKey : profile.getConferenceKeysToAttend()) {
+                    Integer count = registrations.get(conferenceKey);
+                    registrations.put(conferenceKey, count == null ? 1 : count + 1);
+                }
+            }
+
+            int violations = 0;
+            for (String websafeKey : conferenceKeys) {
+                Key<Conference> conferenceKey = Key.create(websafeKey);
+                Conference conference = ofy().load().key(conferenceKey).now();
+                List<Key<SeatShard>> shardKeys = new ArrayList<>();
+                for (int i = 0; i < conference.getSeatShards(); i++) {
+                    shardKeys.add(SeatShard.createKey(conferenceKey, i));
+                }
+                int seatsAvailable = 0;
+                for (SeatShard shard : ofy().load().keys(shardKeys).values()) {
+                    seatsAvailable += shard.getSeatsAvailable();
+                }
+                int booked = conference.getMaxAttendees() - seatsAvailable;
+                Integer registered = registrations.get(websafeKey);
+                registered = registered == null ? 0 : registered;
+
+                boolean violation = registered > conference.getMaxAttendees() || booked != registered;
+                if (violation) {
+                    violations++;
+                }
+                System.out.println(String.format("%s: %d seats, %d booked, %d registered%s", conference.getName(),
+                        conference.getMaxAttendees(), booked, registered, violation ? " VIOLATION" : ""));
+            }
+            System.out.println("Overbooking violations: " + violations);
+            return violations;
+        }
+    }
+
+    /**
+     * Counts the transactions Objectify retries after an optimistic concurrency failure, it
+     * does not report them otherwise.
+     */
+    private void countRetries() {
+        Logger objectifyLogger = Logger.getLogger("com.googlecode.objectify");
+        objectifyLogger.setUseParentHandlers(false);
+        objectifyLogger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getMessage() != null && record.getMessage().startsWith(RETRY_MESSAGE)) {
+                    retries.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        });
+    }
+
+    private static User user(int i) {
+        return new User("user" + i + "@example.com", "example.com", "user" + i);
+    }
+
+    private static ConferenceForm form(String name, int maxAttendees) {
+        Date startDate = new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30));
+        return new ConferenceForm(name, "Load test conference", Arrays.asList("Load", "Test"), "London",
+                startDate, startDate, maxAttendees);
+    }
+}
@@ -0,0 +1,41 @@
+package endpoints.backend.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * ChangeFeedState remembers how far the change feed has been trimmed. A client whose last
+ * sequence is below it may have missed trimmed ChangeRecords and has to load everything again.
+ * There is a single instance, it is read by every change feed request, so it is kept in the
+ * global cache.
+ */
+@Entity
+@Cache
+public class ChangeFeedState {
+    private static final long ID = 1L;
+
+    @Id
+    private Long id = ID; /** The only instance */
+
+    private long trimmedThrough; /** Highest sequence of the ChangeRecords deleted so far */
+
+    public ChangeFeedState() {}
+
+    public static Key<ChangeFeedState> createKey() {
+        return Key.create(ChangeFeedState.class, ID);
+    }
+
+    public long getTrimmedThrough() {
+        return trimmedThrough;
+    }
+
+    /**
+     * Moves the trimmed sequence forward, it never goes back.
+     * @param sequence the highest sequence of the records about to be deleted.
+     */
+    public void trimThrough(final long sequence) {
+        trimmedThrough = Math.max(trimmedThrough, sequence);
+    }
+}
@@ -0,0 +1,65 @@
+package endpoints.backend.domain;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * ChangeRecord tells which Conferences and which Profile a single write has changed, for clients
+ * that keep a copy of them and only want to pull what has changed since their last sync.
+ *
+ * The records are keyed by their sequence, which increases with every write, so the records
+ * after a client's last sequence are read in order from the built-in key index. A record only
+ * holds keys, the clients load the changed entities themselves. Every record is its own root
+ * entity, so appending it in the writer's transaction adds one entity group whatever the write
+ * has changed. See ChangeFeedService.
+ */
+@Entity
+public class ChangeRecord {
+    @Id
+    private Long sequence; /** Position of the write in the change feed */
+
+    @Index
+    private Date time; /** Time the sequence was taken, for the settle window and for trimming old records */
+
+    private List<String> conferenceKeys = new ArrayList<>(0); /** Websafe keys of the changed conferences */
+
+    private String profileUserId; /** userId of the changed profile, null when no profile has changed */
+
+    /** Just making the default constructor private. */
+    private ChangeRecord() {}
+
+    public ChangeRecord(final long sequence, final Date time, final Collection<String> conferenceKeys,
+                        final String profileUserId) {
+        this.sequence = sequence;
+        this.time = time;
+        this.conferenceKeys = new ArrayList<>(conferenceKeys);
+        this.profileUserId = profileUserId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    /**
+     * Returns a defensive copy of conferenceKeys
+     * @return a defensive copy of conferenceKeys
+     */
+    public List<String> getConferenceKeys() {
+        return ImmutableList.copyOf(conferenceKeys);
+    }
+
+    public String getProfileUserId() {
+        return profileUserId;
+    }
+}
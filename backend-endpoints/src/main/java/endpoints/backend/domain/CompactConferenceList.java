@@ -0,0 +1,156 @@
+package endpoints.backend.domain;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompactConferenceList is a page of conferences for list views on mobile clients, laid out in
+ * columns instead of one object per conference, so that the property names are sent once per
+ * page instead of once per conference.
+ *
+ * The i-th conference of the page is made of the i-th element of every column. The cities, the
+ * topics and the organizers repeat a lot between conferences, so every distinct value is sent
+ * once in a dictionary and the columns hold indexes into it, -1 for a missing city. The topics of
+ * a conference are the next topicCounts[i] entries of topicIndexes. Dates are milliseconds since
+ * the epoch. The description is left out like in ConferenceSummary, clients read it with the
+ * conference itself.
+ */
+public class CompactConferenceList {
+    private final List<String> websafeKeys; /** String versions of the keys of the conferences */
+    private final List<String> names; /** Names of the conferences */
+    private final List<String> organizerDictionary = new ArrayList<>(); /** Distinct display names of the organizers */
+    private final List<Integer> organizerIndexes; /** Index of the organizer of each conference in organizerDictionary */
+    private final List<String> cityDictionary = new ArrayList<>(); /** Distinct cities */
+    private final List<Integer> cityIndexes; /** Index of the city of each conference in cityDictionary, -1 when there is none */
+    private final List<String> topicDictionary = new ArrayList<>(); /** Distinct topics */
+    private final List<Integer> topicIndexes = new ArrayList<>(); /** Indexes in topicDictionary of the topics of all the conferences, one after the other */
+    private final List<Integer> topicCounts; /** Number of topics of each conference in topicIndexes */
+    private final List<Long> startDates; /** Starting dates in milliseconds since the epoch, null when not set */
+    private final List<Long> endDates; /** Ending dates in milliseconds since the epoch, null when not set */
+    private final List<Integer> maxAttendees; /** Maximum capacities of the conferences */
+    private final List<Integer> seatsAvailable; /** Numbers of seats available */
+    private final String nextPageToken; /** The cursor of the next page, null on the last page */
+
+    /**
+     * Lays out the given conferences in columns.
+     *
+     * @param conferences The conferences of the page, with their organizers attached.
+     * @param nextPageToken The cursor of the next page, null on the last page.
+     */
+    public CompactConferenceList(List<Conference> conferences, String nextPageToken) {
+        int size = conferences.size();
+        websafeKeys = new ArrayList<>(size);
+        names = new ArrayList<>(size);
+        organizerIndexes = new ArrayList<>(size);
+        cityIndexes = new ArrayList<>(size);
+        topicCounts = new ArrayList<>(size);
+        startDates = new ArrayList<>(size);
+        endDates = new ArrayList<>(size);
+        maxAttendees = new ArrayList<>(size);
+        seatsAvailable = new ArrayList<>(size);
+        this.nextPageToken = nextPageToken;
+
+        Map<String, Integer> organizers = new HashMap<>();
+        Map<String, Integer> cities = new HashMap<>();
+        Map<String, Integer> topics = new HashMap<>();
+        for (Conference conference : conferences) {
+            websafeKeys.add(conference.getWebsafeKey());
+            names.add(conference.getName());
+            organizerIndexes.add(indexOf(conference.getOrganizerDisplayName(), organizers, organizerDictionary));
+            cityIndexes.add(indexOf(conference.getCity(), cities, cityDictionary));
+            List<String> conferenceTopics = conference.getTopics();
+            if (conferenceTopics == null) {
+                topicCounts.add(0);
+            } else {
+                for (String topic : conferenceTopics) {
+                    topicIndexes.add(indexOf(topic, topics, topicDictionary));
+                }
+                topicCounts.add(conferenceTopics.size());
+            }
+            startDates.add(toMillis(conference.getStartDate()));
+            endDates.add(toMillis(conference.getEndDate()));
+            maxAttendees.add(conference.getMaxAttendees());
+            seatsAvailable.add(conference.getSeatsAvailable());
+        }
+    }
+
+    /**
+     * Returns the index of the value in the dictionary, adding it when it is not there yet.
+     * @return the index, -1 for null.
+     */
+    private static Integer indexOf(String value, Map<String, Integer> indexes, List<String> dictionary) {
+        if (value == null) {
+            return -1;
+        }
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = dictionary.size();
+            indexes.put(value, index);
+            dictionary.add(value);
+        }
+        return index;
+    }
+
+    private static Long toMillis(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    public List<String> getWebsafeKeys() {
+        return websafeKeys;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public List<String> getOrganizerDictionary() {
+        return organizerDictionary;
+    }
+
+    public List<Integer> getOrganizerIndexes() {
+        return organizerIndexes;
+    }
+
+    public List<String> getCityDictionary() {
+        return cityDictionary;
+    }
+
+    public List<Integer> getCityIndexes() {
+        return cityIndexes;
+    }
+
+    public List<String> getTopicDictionary() {
+        return topicDictionary;
+    }
+
+    public List<Integer> getTopicIndexes() {
+        return topicIndexes;
+    }
+
+    public List<Integer> getTopicCounts() {
+        return topicCounts;
+    }
+
+    public List<Long> getStartDates() {
+        return startDates;
+    }
+
+    public List<Long> getEndDates() {
+        return endDates;
+    }
+
+    public List<Integer> getMaxAttendees() {
+        return maxAttendees;
+    }
+
+    public List<Integer> getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+}
@@ -5,12 +5,17 @@ import com.google.api.server.spi.config.ApiResourceProperty;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Ignore;
 import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.OnSave;
 import com.googlecode.objectify.annotation.Parent;
 import com.googlecode.objectify.condition.IfNotDefault;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -22,9 +27,15 @@ import endpoints.backend.service.OfyService;
  * Conference class stores conference information
  */
 @Entity
-public class Conference {
+@Cache(expirationSeconds = OfyService.CONFERENCE_CACHE_EXPIRATION_SECONDS)
+public class Conference implements Serializable {
+    private static final long serialVersionUID = 1L;
     private static final String DEFAULT_CITY = "Default City";
     private static final List<String> DEFAULT_TOPICS = ImmutableList.of("Default", "Topic");
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    //** Maximum number of week buckets of a conference, longer conferences are found in their first two years only */
+    private static final int MAX_WEEK_BUCKETS = 106;
 
     @Id
     private Long id; /** The Id for the Datastore Key, Automatic Id assignment for entities of Conference class. */
@@ -47,10 +58,16 @@ public class Conference {
     @Index(IfNotDefault.class)
     private String city; //** The name of the city that the conference takes place */
 
+    @Index
     private Date startDate; //** Starting date of this conference */
 
+    @Index
     private Date endDate; //** Ending date of this conference */
 
+    @Index
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private List<Integer> weekBuckets; //** Weeks since the epoch (UTC) from startDate to endDate, for querying the conferences running in a time window */
+
     @Index
     private int month; //** Indicating starting month derived from startDate. We need this for composite query specifiying the starting month*/
 
@@ -60,6 +77,24 @@ public class Conference {
     @Index
     private int seatsAvailable; //** Number of seats currently available */
 
+    @Index
+    private Date lastModified; //** Time of the last save, for syncing only the conferences changed since a client's last sync */
+
+    private long version; //** Bumped by every change of the conference, for answering clients which already have it */
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private int seatShards; //** Number of SeatShards holding the available seats, 0 when they are counted on this entity */
+
+    @Ignore
+    private String organizerDisplayName; //** Organizer's display name attached after a batch load, not stored */
+
+    @Ignore
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private long organizerVersion; //** Version of the organizer's profile attached with the display name, not stored */
+
+    @Ignore
+    private String websafeKey; //** Memoized getWebsafeKey, not stored but kept in the pages cached by ConferenceCache */
+
     //** Just making the default constructor private. */
     private Conference(){}
 
@@ -86,9 +121,17 @@ public class Conference {
         return profileKey;
     }
 
-    //** Get string version of the key */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Key<Conference> getKey(){
+        return Key.create(profileKey, Conference.class, id);
+    }
+
+    //** Get string version of the key, encoded once per instance as every response reads it */
     public String getWebsafeKey(){
-        return Key.create(profileKey, Conference.class, id).getString();
+        if(websafeKey == null){
+            websafeKey = getKey().getString();
+        }
+        return websafeKey;
     }
 
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
@@ -98,9 +141,14 @@ public class Conference {
 
     /**
      * Return organizer's display name.
+     * The name attached with attachOrganizer is used when there is one, otherwise the organizer's
+     * profile is loaded from the datastore.
      * @return organizer's display name. If there is no profile, return his/her userId.
      */
     public String getOrganizerDisplayName(){
+        if(organizerDisplayName != null){
+            return organizerDisplayName;
+        }
         Profile organizer = OfyService.ofy().load().key(getProfileKey()).now();
         if(organizer == null) {
             return organizerUserId;
@@ -109,6 +157,17 @@ public class Conference {
         }
     }
 
+    /**
+     * Attaches the organizer's display name from an already loaded profile, so that
+     * getOrganizerDisplayName does not go to the datastore for every conference. The version of
+     * the profile is attached for getEtag.
+     * @param organizer organizer's profile, null if there is no profile.
+     */
+    public void attachOrganizer(Profile organizer){
+        this.organizerDisplayName = organizer == null ? organizerUserId : organizer.getDisplayName();
+        this.organizerVersion = organizer == null ? 0 : organizer.getVersion();
+    }
+
     /**
      * Returns defensive copy of topics if not null
      * @return defensive copy of topics if not null
@@ -147,6 +206,101 @@ public class Conference {
         return seatsAvailable;
     }
 
+    /**
+     * Returns the list view of this conference.
+     * Unlike the getters, the dates are not copied, the summary is only serialized to the client.
+     * @return the summary of this conference
+     */
+    public ConferenceSummary toSummary(){
+        return new ConferenceSummary(getWebsafeKey(), name, city, startDate, endDate, maxAttendees, seatsAvailable);
+    }
+
+    /**
+     * Returns a defensive copy of lastModified if not null
+     * @return a defensive copy of lastModified if not null
+     */
+    public Date getLastModified(){
+        return lastModified == null ? null : new Date(lastModified.getTime());
+    }
+
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * Returns the tag of this conference as getConference returns it, for clients asking whether
+     * their copy is current. The seats are part of it, the bookings change the SeatShards without
+     * changing the conference, so updateSeatsAvailable does not bump the version. So is the
+     * version of the organizer's profile attached with attachOrganizer, as the response holds
+     * the organizer's display name.
+     * @return the version, the version of the organizer's profile and the available seats
+     */
+    public String getEtag(){
+        return version + "." + organizerVersion + "." + seatsAvailable;
+    }
+
+    //** Stamps every save, including the seat counts written back by SeatCounterService when they have changed */
+    @OnSave
+    private void updateLastModified(){
+        this.lastModified = new Date();
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public int getSeatShards(){
+        return seatShards;
+    }
+
+    /**
+     * Moves the available seats of this conference to the given number of SeatShards.
+     * Only meant to be called by SeatCounterService, which creates the shards.
+     * @param seatShards number of shards, greater than zero
+     */
+    public void shardSeats(final int seatShards){
+        Preconditions.checkArgument(seatShards > 0, "At least one shard is required!");
+        this.seatShards = seatShards;
+    }
+
+    /**
+     * Sets the number of available seats summed up from the SeatShards.
+     * @param seatsAvailable the number of seats available in all the shards
+     */
+    public void updateSeatsAvailable(final int seatsAvailable){
+        this.seatsAvailable = seatsAvailable;
+    }
+
+    /**
+     * Returns the week bucket of the given time, the number of weeks since the epoch in UTC.
+     * @param time the time in milliseconds since the epoch
+     * @return the week bucket
+     */
+    public static int weekBucket(final long time){
+        long day = time / MILLIS_PER_DAY;
+        // Times before the epoch are rounded down as well
+        if(time < 0 && time % MILLIS_PER_DAY != 0){
+            day--;
+        }
+        return (int) (day >= 0 ? day / 7 : (day - 6) / 7);
+    }
+
+    /**
+     * Returns the week buckets from the start to the end, at most MAX_WEEK_BUCKETS.
+     * @param startDate the start, no buckets when it is null
+     * @param endDate the end, the start is used when it is null or before the start
+     * @return the week buckets
+     */
+    private static List<Integer> weekBuckets(final Date startDate, final Date endDate){
+        List<Integer> buckets = new ArrayList<>();
+        if(startDate == null){
+            return buckets;
+        }
+        int first = weekBucket(startDate.getTime());
+        int last = endDate == null ? first : Math.max(first, weekBucket(endDate.getTime()));
+        for(int week = first; week <= last && buckets.size() < MAX_WEEK_BUCKETS; week++){
+            buckets.add(week);
+        }
+        return buckets;
+    }
+
     /**
      * Updates the conference with ConferenceForm.
      * This method used upon object creation as well as updating existing Conferences.
@@ -165,6 +319,8 @@ public class Conference {
         Date endDate = conferenceForm.getEndDate();
         this.endDate = endDate == null ? null : new Date(endDate.getTime());
 
+        this.weekBuckets = weekBuckets(this.startDate, this.endDate);
+
         // Getting starting month for composite querry
         if(this.startDate != null){
             Calendar calendar = Calendar.getInstance();
@@ -183,6 +339,7 @@ public class Conference {
         // However, if there ara already some seats allocated, we should subtract that number
         this.maxAttendees = conferenceForm.getMaxAttendees();
         this.seatsAvailable = this.maxAttendees - seatsAllocated;
+        version++;
     }
 
     public void bookSeats(final int number){
@@ -190,6 +347,7 @@ public class Conference {
             throw new IllegalArgumentException("There are no seats available!");
         }
         seatsAvailable -= number;
+        version++;
     }
 
     public void giveBackSeats(final int number){
@@ -197,6 +355,7 @@ public class Conference {
             throw new IllegalArgumentException("The number of seats will exceeds the capacity!");
         }
         seatsAvailable += number;
+        version++;
     }
 
     @Override
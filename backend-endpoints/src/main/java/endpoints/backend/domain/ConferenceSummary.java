@@ -0,0 +1,81 @@
+package endpoints.backend.domain;
+
+import java.util.Date;
+
+/**
+ * ConferenceSummary holds the few properties of a Conference shown in list views.
+ *
+ * All of them are indexed properties of Conference, so summaries are read with projection
+ * queries from the indexes only, without loading the whole entities.
+ */
+public class ConferenceSummary {
+    private String websafeKey; /** String version of the key of the conference */
+    private String name; /** Name of the conference */
+    private String city; /** The name of the city that the conference takes place */
+    private Date startDate; /** Starting date of the conference */
+    private Date endDate; /** Ending date of the conference */
+    private int maxAttendees; /** Maximum capacity of the conference */
+    private int seatsAvailable; /** Number of seats available */
+
+    public ConferenceSummary(String websafeKey, String name, String city, Date startDate, Date endDate,
+                             int maxAttendees, int seatsAvailable) {
+        this.websafeKey = websafeKey;
+        this.name = name;
+        this.city = city;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.maxAttendees = maxAttendees;
+        this.seatsAvailable = seatsAvailable;
+    }
+
+    public String getWebsafeKey() {
+        return websafeKey;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public int getMaxAttendees() {
+        return maxAttendees;
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    /**
+     * Sets a property which could not be projected because the query has an equality filter on
+     * it, the datastore does not allow both. Its value is the value of the filter.
+     *
+     * @param fieldName The name of the property in Conference.
+     * @param value The value of the equality filter.
+     */
+    public void applyEqualityFilter(String fieldName, Object value) {
+        switch (fieldName) {
+            case "city":
+                city = (String) value;
+                break;
+            case "maxAttendees":
+                maxAttendees = (Integer) value;
+                break;
+            case "seatsAvailable":
+                seatsAvailable = (Integer) value;
+                break;
+            default:
+                // Not a property of the summary
+        }
+    }
+}
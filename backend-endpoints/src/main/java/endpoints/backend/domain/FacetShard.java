@@ -0,0 +1,72 @@
+package endpoints.backend.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Serialize;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FacetShard holds a part of the number of conferences per facet, e.g. per city or per topic.
+ *
+ * Every change of the conferences is counted on a single random shard, so that concurrent
+ * changes do not all contend for one entity group, and the counts of a facet are the sum of
+ * its counts in all the shards. A shard keeps the counts of all the facets, so a change is one
+ * entity write no matter how many facets it touches and all the counts are read with one batch
+ * get. The facets are keys like "CITY:London", see FacetCounterService.
+ */
+@Entity
+public class FacetShard {
+    @Id
+    private Long id; /** Index of the shard plus one, the datastore does not allow 0 as an id */
+
+    @Serialize
+    private HashMap<String, Long> counts = new HashMap<>(); /** Number of conferences per facet in this shard */
+
+    /** Just making the default constructor private. */
+    private FacetShard() {}
+
+    public FacetShard(final int index) {
+        this.id = index + 1L;
+    }
+
+    /**
+     * Returns the key of the shard with the given index.
+     * @param index index of the shard, from 0 to the number of shards - 1.
+     * @return the key of the shard.
+     */
+    public static Key<FacetShard> createKey(int index) {
+        return Key.create(FacetShard.class, index + 1L);
+    }
+
+    public Map<String, Long> getCounts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Adds the given deltas to the counts, facets whose count drops to zero are removed.
+     * @param deltas the change of the count per facet.
+     */
+    public void add(final Map<String, Long> deltas) {
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            Long count = counts.get(delta.getKey());
+            long newCount = (count == null ? 0 : count) + delta.getValue();
+            if (newCount == 0) {
+                counts.remove(delta.getKey());
+            } else {
+                counts.put(delta.getKey(), newCount);
+            }
+        }
+    }
+
+    /**
+     * Replaces all the counts, used when the counts are rebuilt from the conferences.
+     * @param counts the number of conferences per facet.
+     */
+    public void reset(final Map<String, Long> counts) {
+        this.counts = new HashMap<>(counts);
+    }
+}
@@ -1,17 +1,31 @@
 package endpoints.backend.domain;
 
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.annotation.Cache;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import endpoints.backend.form.ProfileForm.TeeShirtSize;
+import endpoints.backend.service.OfyService;
 
 // indicate that this class is an Entity
 @Entity
+// keep it in the global cache, see OfyService for the caching policy
+@Cache(expirationSeconds = OfyService.PROFILE_CACHE_EXPIRATION_SECONDS)
 public class Profile {
     String displayName;
     String mainEmail;
     TeeShirtSize teeShirtSize;
 
+    // Keys of the conferences that this user registers to attend
+    List<String> conferenceKeysToAttend = new ArrayList<>(0);
+
+    // Bumped by every change of the profile, for answering clients which already have it
+    long version;
+
     // indicate that the userId is to be used in the Entity's key
     @Id
     String userId;
@@ -49,6 +63,35 @@ public class Profile {
         return userId;
     }
 
+    /**
+     * Returns a defensive copy of conferenceKeysToAttend
+     * @return a defensive copy of conferenceKeysToAttend
+     */
+    public List<String> getConferenceKeysToAttend() {
+        return ImmutableList.copyOf(conferenceKeysToAttend);
+    }
+
+    /**
+     * Adds a websafe conference key to conferenceKeysToAttend
+     * @param conferenceKey websafe key of the conference to attend
+     */
+    public void addToConferenceKeysToAttend(String conferenceKey) {
+        conferenceKeysToAttend.add(conferenceKey);
+        version++;
+    }
+
+    /**
+     * Removes a websafe conference key from conferenceKeysToAttend
+     * @param conferenceKey websafe key of the conference not to attend anymore
+     * @throws IllegalArgumentException when the user has not registered for the conference
+     */
+    public void unregisterFromConference(String conferenceKey) {
+        if(!conferenceKeysToAttend.remove(conferenceKey)){
+            throw new IllegalArgumentException("Invalid conferenceKey: " + conferenceKey);
+        }
+        version++;
+    }
+
     /**
      * Update the Profile with given displayName and teeShirtSize
      * @param displayName
@@ -57,5 +100,19 @@ public class Profile {
     public void update(String displayName, TeeShirtSize teeShirtSize) {
         if(displayName != null) this.displayName = displayName;
         if(teeShirtSize != null) this.teeShirtSize = teeShirtSize;
+        version++;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the tag of this profile as getProfile returns it, for clients asking whether their
+     * copy is current.
+     * @return the version of the profile
+     */
+    public String getEtag() {
+        return String.valueOf(version);
     }
 }
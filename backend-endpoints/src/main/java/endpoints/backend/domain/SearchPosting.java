@@ -0,0 +1,51 @@
+package endpoints.backend.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.Parent;
+
+/**
+ * SearchPosting is an entry of the full-text search index: a token which occurs in a Conference.
+ *
+ * The postings of a conference are its children, so they share its entity group and are written
+ * in the same transaction as the conference. A search scans the postings of all the conferences
+ * by the indexed token and finds the conference from the parent of the posting key.
+ */
+@Entity
+public class SearchPosting {
+    @Parent
+    private Key<Conference> conferenceKey; /** The conference the token occurs in */
+
+    @Id
+    private String id; /** The token, so that a conference has a single posting per token */
+
+    @Index
+    private String token; /** The token again, the id can not be queried by prefix across conferences */
+
+    @Index
+    private int weight; /** How relevant the token is for the conference, see SearchIndexService */
+
+    /** Just making the default constructor private. */
+    private SearchPosting() {}
+
+    public SearchPosting(final Key<Conference> conferenceKey, final String token, final int weight) {
+        this.conferenceKey = conferenceKey;
+        this.id = token;
+        this.token = token;
+        this.weight = weight;
+    }
+
+    public Key<Conference> getConferenceKey() {
+        return conferenceKey;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
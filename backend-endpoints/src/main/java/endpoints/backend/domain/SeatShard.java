@@ -0,0 +1,69 @@
+package endpoints.backend.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * SeatShard holds a part of the available seats of a Conference.
+ *
+ * Booking a seat on the Conference entity itself serializes all the registrations for that
+ * conference on a single entity group. The seats are spread over several SeatShards instead,
+ * each one being its own entity group, so that concurrent registrations update different
+ * shards. The shards are root entities on purpose: as children of the conference they would
+ * share its entity group and its write rate.
+ */
+@Entity
+public class SeatShard {
+    @Id
+    private String id; /** websafe key of the conference and the index of the shard */
+
+    private int capacity; /** Number of seats given to this shard when it was created */
+
+    private int seatsAvailable; /** Number of seats of this shard currently available */
+
+    /** Just making the default constructor private. */
+    private SeatShard() {}
+
+    public SeatShard(final Key<Conference> conferenceKey, final int index, final int capacity) {
+        this.id = createId(conferenceKey, index);
+        this.capacity = capacity;
+        this.seatsAvailable = capacity;
+    }
+
+    private static String createId(Key<Conference> conferenceKey, int index) {
+        return conferenceKey.getString() + "-" + index;
+    }
+
+    /**
+     * Returns the key of a shard of the given conference.
+     * @param conferenceKey key of the conference.
+     * @param index index of the shard, from 0 to the number of shards - 1.
+     * @return the key of the shard.
+     */
+    public static Key<SeatShard> createKey(Key<Conference> conferenceKey, int index) {
+        return Key.create(SeatShard.class, createId(conferenceKey, index));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    public void bookSeats(final int number) {
+        if (seatsAvailable < number) {
+            throw new IllegalArgumentException("There are no seats available!");
+        }
+        seatsAvailable -= number;
+    }
+
+    public void giveBackSeats(final int number) {
+        if (seatsAvailable + number > capacity) {
+            throw new IllegalArgumentException("The number of seats will exceeds the capacity!");
+        }
+        seatsAvailable += number;
+    }
+}
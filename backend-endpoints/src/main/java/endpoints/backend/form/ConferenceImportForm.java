@@ -0,0 +1,24 @@
+package endpoints.backend.form;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/** A simple Java object (POJO) representing a batch of Conference forms imported at once. */
+public class ConferenceImportForm {
+    private List<ConferenceForm> conferences; /** The conferences to be created, one per row */
+
+    /** Just making the default constructor private */
+    private ConferenceImportForm(){}
+
+    /**
+     * @param conferences
+     */
+    public ConferenceImportForm(List<ConferenceForm> conferences){
+        this.conferences = conferences == null ? null : ImmutableList.copyOf(conferences);
+    }
+
+    public List<ConferenceForm> getConferences(){
+        return conferences;
+    }
+}
@@ -0,0 +1,256 @@
+package endpoints.backend.form;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.cmd.Query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import endpoints.backend.domain.Conference;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * A simple Java object (POJO) representing a query for Conferences sent from the client.
+ *
+ * The form also plans the datastore query: the datastore allows inequality filters on a single
+ * property only and that property has to be the first sort order. So the query is sorted by the
+ * inequality field first when there is one and by name after that, all the other filters are
+ * pushed down as equality filters.
+ */
+public class ConferenceQueryForm {
+
+    /** The type of a field, used for converting the filter value sent as a String. */
+    public static enum FieldType {
+        STRING,
+        INTEGER
+    }
+
+    /** Fields of Conference that can be used in a filter, all of them are indexed. */
+    public static enum Field {
+        CITY("city", FieldType.STRING),
+        TOPIC("topics", FieldType.STRING),
+        MONTH("month", FieldType.INTEGER),
+        MAX_ATTENDEES("maxAttendees", FieldType.INTEGER),
+        SEATS_AVAILABLE("seatsAvailable", FieldType.INTEGER);
+
+        private String fieldName; /** The name of the indexed property of Conference */
+        private FieldType fieldType;
+
+        private Field(String fieldName, FieldType fieldType) {
+            this.fieldName = fieldName;
+            this.fieldType = fieldType;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        public FieldType getFieldType() {
+            return fieldType;
+        }
+    }
+
+    /** Operators that can be used in a filter. */
+    public static enum Operator {
+        EQ("=="),
+        LT("<"),
+        GT(">"),
+        LTEQ("<="),
+        GTEQ(">="),
+        NE("!=");
+
+        private String queryOperator; /** The operator as Objectify expects it in a filter condition */
+
+        private Operator(String queryOperator) {
+            this.queryOperator = queryOperator;
+        }
+
+        public String getQueryOperator() {
+            return queryOperator;
+        }
+
+        public boolean isInequalityFilter() {
+            return this != EQ;
+        }
+    }
+
+    /** A single filter sent from the client, e.g. {field: "CITY", operator: "EQ", value: "London"}. */
+    public static class Filter {
+        private Field field;
+        private Operator operator;
+        private String value;
+
+        /** Just making the default constructor private. */
+        private Filter() {}
+
+        public Filter(Field field, Operator operator, String value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return field + " " + operator + " " + value;
+        }
+    }
+
+    private List<Filter> filters = new ArrayList<>(); /** Filters sent from the client */
+
+    public ConferenceQueryForm() {}
+
+    /**
+     * Returns a defensive copy of the filters.
+     * @return a defensive copy of the filters.
+     */
+    public List<Filter> getFilters() {
+        return ImmutableList.copyOf(filters);
+    }
+
+    /**
+     * Adds a filter to the form, solely for unit tests and server side callers.
+     * @param filter A filter to be applied to the query.
+     * @return this form, for chaining.
+     */
+    public ConferenceQueryForm filter(Filter filter) {
+        filters.add(filter);
+        return this;
+    }
+
+    /**
+     * Returns the filters in their canonical form, used for identifying the query in caches.
+     * Every value is prefixed with its length, so no value can be read as the start of another
+     * filter and different filters never give the same string.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Filter filter : filters) {
+            sb.append(filter.field).append(' ').append(filter.operator).append(' ');
+            if (filter.value == null) {
+                sb.append('-');
+            } else {
+                sb.append(filter.value.length()).append(':').append(filter.value);
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the single inequality filter of the form, after checking that all the inequality
+     * filters are on the same field.
+     *
+     * @return The first inequality filter, null when there is no inequality filter.
+     * @throws IllegalArgumentException when the inequality filters are on more than one field or
+     *         when a filter is incomplete.
+     */
+    private Filter getInequalityFilter() {
+        Filter inequalityFilter = null;
+        for (Filter filter : filters) {
+            if (filter.field == null || filter.operator == null || filter.value == null) {
+                throw new IllegalArgumentException("A filter needs a field, an operator and a value.");
+            }
+            if (!filter.operator.isInequalityFilter()) {
+                continue;
+            }
+            if (inequalityFilter == null) {
+                inequalityFilter = filter;
+            } else if (inequalityFilter.field != filter.field) {
+                throw new IllegalArgumentException("Inequality filter is allowed on only one field, but "
+                        + inequalityFilter.field + " and " + filter.field + " were given.");
+            }
+        }
+        return inequalityFilter;
+    }
+
+    /**
+     * Plans the query: sorts on the inequality field first when there is one and on the name
+     * after that, then applies all the filters so that they are evaluated by the datastore.
+     *
+     * @return an Objectify query for the Conferences matching the filters.
+     * @throws IllegalArgumentException when the filters can not be satisfied by a single query.
+     */
+    public Query<Conference> getQuery() {
+        Filter inequalityFilter = getInequalityFilter();
+
+        Query<Conference> query = ofy().load().type(Conference.class);
+        if (inequalityFilter != null) {
+            query = query.order(inequalityFilter.field.getFieldName());
+        }
+        query = query.order("name");
+
+        for (Filter filter : filters) {
+            String condition = filter.field.getFieldName() + " " + filter.operator.getQueryOperator();
+            query = query.filter(condition, convertValue(filter));
+        }
+        return query;
+    }
+
+    /**
+     * Tells whether the form has a NE filter. The datastore runs such a query as one query per side
+     * of the filter merged in memory, which has no cursor, so it can be read in a single batch only.
+     *
+     * @return true when one of the filters uses the NE operator.
+     */
+    public boolean hasNotEqualFilter() {
+        for (Filter filter : filters) {
+            if (filter.operator == Operator.NE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the values of the equality filters by the name of the property they are on.
+     * The datastore can not project a property with an equality filter, the value of the
+     * property is the value of the filter for all the results anyway.
+     *
+     * @return the converted value of the first equality filter on each property.
+     * @throws IllegalArgumentException when a filter is incomplete or its value is invalid.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Map<String, Object> getEqualityFilters() {
+        Map<String, Object> equalityFilters = new LinkedHashMap<>();
+        for (Filter filter : filters) {
+            if (filter.operator == Operator.EQ && filter.field != null && filter.value != null
+                    && !equalityFilters.containsKey(filter.field.getFieldName())) {
+                equalityFilters.put(filter.field.getFieldName(), convertValue(filter));
+            }
+        }
+        return equalityFilters;
+    }
+
+    /**
+     * Converts the String value of the filter to the type of the field.
+     */
+    private static Object convertValue(Filter filter) {
+        if (filter.field.getFieldType() == FieldType.INTEGER) {
+            try {
+                return Integer.parseInt(filter.value.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(filter.field + " needs a number, but the value was "
+                        + filter.value);
+            }
+        }
+        return filter.value;
+    }
+}
@@ -0,0 +1,240 @@
+package endpoints.backend.service;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Latency and datastore operation metrics of the API methods.
+ *
+ * ApiMetricsFilter times every call and counts the datastore operations made on the calling
+ * thread, which the datastore service of MeteredObjectifyFactory reports here. Every call is
+ * added to the totals of its method with a few atomic increments, and written to the log as a
+ * single JSON line when FINE is enabled for this class in logging.properties.
+ *
+ * The operations are the ones actually sent to the datastore: reads served by the Objectify
+ * global cache are not counted, they show up in its hit rate instead. The entities read are
+ * the ones of gets, queries are counted but not the entities they return.
+ */
+public class ApiMetrics {
+    private static final Logger LOG = Logger.getLogger(ApiMetrics.class.getName());
+
+    /**
+     * Number of latency buckets. Bucket i counts the calls taking less than 2^i microseconds,
+     * the last one also counts all the slower calls.
+     */
+    public static final int LATENCY_BUCKETS = 26;
+
+    /** The totals of a single API method. */
+    public static class MethodStats {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS);
+        private final AtomicLong gets = new AtomicLong();
+        private final AtomicLong entitiesRead = new AtomicLong();
+        private final AtomicLong puts = new AtomicLong();
+        private final AtomicLong entitiesWritten = new AtomicLong();
+        private final AtomicLong deletes = new AtomicLong();
+        private final AtomicLong queries = new AtomicLong();
+
+        private void record(CallStats call, long micros, boolean failed) {
+            calls.incrementAndGet();
+            if (failed) {
+                failures.incrementAndGet();
+            }
+            totalMicros.addAndGet(micros);
+            latencyHistogram.incrementAndGet(latencyBucket(micros));
+            gets.addAndGet(call.gets);
+            entitiesRead.addAndGet(call.entitiesRead);
+            puts.addAndGet(call.puts);
+            entitiesWritten.addAndGet(call.entitiesWritten);
+            deletes.addAndGet(call.deletes);
+            queries.addAndGet(call.queries);
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getTotalMicros() {
+            return totalMicros.get();
+        }
+
+        /**
+         * @param bucket from 0 to LATENCY_BUCKETS - 1.
+         * @return the number of calls taking less than 2^bucket microseconds and at least 2^(bucket - 1).
+         */
+        public long getLatencyCount(int bucket) {
+            return latencyHistogram.get(bucket);
+        }
+
+        public long getGets() {
+            return gets.get();
+        }
+
+        public long getEntitiesRead() {
+            return entitiesRead.get();
+        }
+
+        public long getPuts() {
+            return puts.get();
+        }
+
+        public long getEntitiesWritten() {
+            return entitiesWritten.get();
+        }
+
+        public long getDeletes() {
+            return deletes.get();
+        }
+
+        public long getQueries() {
+            return queries.get();
+        }
+    }
+
+    /** The datastore operations of the call running on the current thread. */
+    private static class CallStats {
+        private long gets;
+        private long entitiesRead;
+        private long puts;
+        private long entitiesWritten;
+        private long deletes;
+        private long queries;
+    }
+
+    private static final ConcurrentMap<String, MethodStats> methods = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<CallStats> currentCall = new ThreadLocal<>();
+
+    /**
+     * Starts counting the datastore operations of a call on the current thread.
+     */
+    public static void startCall() {
+        currentCall.set(new CallStats());
+    }
+
+    /**
+     * Adds the call running on the current thread to the totals of its method.
+     *
+     * @param method The name of the API method.
+     * @param nanos The time the call took.
+     * @param failed Whether the call has thrown an exception.
+     */
+    public static void endCall(String method, long nanos, boolean failed) {
+        CallStats call = currentCall.get();
+        currentCall.remove();
+        if (call == null) {
+            return;
+        }
+
+        MethodStats stats = methods.get(method);
+        if (stats == null) {
+            MethodStats newStats = new MethodStats();
+            stats = methods.putIfAbsent(method, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        long micros = nanos / 1000;
+        stats.record(call, micros, failed);
+
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("{\"method\":\"" + method + "\",\"micros\":" + micros + ",\"failed\":" + failed
+                    + ",\"gets\":" + call.gets + ",\"entitiesRead\":" + call.entitiesRead
+                    + ",\"puts\":" + call.puts + ",\"entitiesWritten\":" + call.entitiesWritten
+                    + ",\"deletes\":" + call.deletes + ",\"queries\":" + call.queries + "}");
+        }
+    }
+
+    /**
+     * Returns the totals per API method, the values keep changing while they are read.
+     */
+    public static Map<String, MethodStats> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Returns the bucket of the latency histogram for the given latency.
+     */
+    public static int latencyBucket(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * Wraps the datastore service so that the operations sent through it are counted for the
+     * call running on the calling thread.
+     *
+     * @param delegate The datastore service doing the work.
+     * @return The metered datastore service.
+     */
+    public static AsyncDatastoreService meter(final AsyncDatastoreService delegate) {
+        return (AsyncDatastoreService) Proxy.newProxyInstance(AsyncDatastoreService.class.getClassLoader(),
+                new Class<?>[] {AsyncDatastoreService.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        CallStats call = currentCall.get();
+                        if (call != null) {
+                            count(call, method.getName(), args);
+                        }
+                        try {
+                            return method.invoke(delegate, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Counts an operation, the entities or keys are always the last argument.
+     */
+    private static void count(CallStats call, String operation, Object[] args) {
+        Object entities = args == null || args.length == 0 ? null : args[args.length - 1];
+        switch (operation) {
+            case "get":
+                call.gets++;
+                call.entitiesRead += size(entities);
+                break;
+            case "put":
+                call.puts++;
+                call.entitiesWritten += size(entities);
+                break;
+            case "delete":
+                call.deletes++;
+                break;
+            case "prepare":
+                call.queries++;
+                break;
+            default:
+                // Transactions, id allocations and index reads are not counted
+        }
+    }
+
+    private static int size(Object entities) {
+        if (entities instanceof Collection) {
+            return ((Collection<?>) entities).size();
+        }
+        if (entities instanceof Object[]) {
+            return ((Object[]) entities).length;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,227 @@
+package endpoints.backend.service;
+
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+import com.googlecode.objectify.cmd.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import endpoints.backend.domain.ChangeFeedState;
+import endpoints.backend.domain.ChangeRecord;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Appends a ChangeRecord for every write of conferences and profiles, and reads them back in
+ * the order of their sequence for the clients pulling the changes since their last sync.
+ *
+ * A sequence is taken with an atomic memcache increment, not from a counter entity, which would
+ * serialize every write of the application on one entity group. When the counter is missing,
+ * e.g. after an eviction, it starts again at the current time times SEQUENCES_PER_MILLI, which
+ * is above every sequence handed out before unless they were taken faster than that on average.
+ *
+ * A sequence is taken before its record commits, so a record may become visible after records
+ * with a higher sequence. Readers therefore stop at the first record younger than
+ * SETTLE_MILLIS, by then every record with a lower sequence has committed and is indexed.
+ */
+public class ChangeFeedService {
+    private static final Logger LOG = Logger.getLogger(ChangeFeedService.class.getName());
+
+    /** Sequences per millisecond the counter starts above the previous ones, see the class comment. */
+    private static final long SEQUENCES_PER_MILLI = 1000;
+
+    /** Records younger than this may still have records with a lower sequence committing. */
+    private static final long SETTLE_MILLIS = 10 * 1000;
+
+    /** Records older than this are deleted by trim. */
+    private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /** Number of records deleted at a time by trim. */
+    private static final int TRIM_BATCH_SIZE = 500;
+
+    private static final String NAMESPACE = "ChangeFeed";
+    private static final String SEQUENCE_KEY = "SEQUENCE";
+
+    /** The records after a sequence, as far as they have settled. */
+    public static class Page {
+        private final List<ChangeRecord> records;
+        private final long lastSequence;
+        private final boolean more;
+        private final boolean resync;
+
+        public Page(List<ChangeRecord> records, long lastSequence, boolean more, boolean resync) {
+            this.records = records;
+            this.lastSequence = lastSequence;
+            this.more = more;
+            this.resync = resync;
+        }
+
+        public List<ChangeRecord> getRecords() {
+            return records;
+        }
+
+        /** The sequence of the last record, or the given sequence when there are no records. */
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        /** Whether there are more settled records after this page. */
+        public boolean isMore() {
+            return more;
+        }
+
+        /** Whether records after the given sequence have been trimmed, so changes may have been missed. */
+        public boolean isResync() {
+            return resync;
+        }
+    }
+
+    private static MemcacheService memcache() {
+        return MemcacheServiceFactory.getMemcacheService(NAMESPACE);
+    }
+
+    /**
+     * Creates the record of a write, to be saved together with the written entities.
+     * The write has to fail when this fails, so that no change goes unrecorded.
+     *
+     * @param websafeConferenceKeys The websafe keys of the conferences written.
+     * @param profileUserId The userId of the profile written, null when no profile is written.
+     * @return The record, not saved yet.
+     * @throws IllegalStateException when no sequence can be taken.
+     */
+    public static ChangeRecord newRecord(Collection<String> websafeConferenceKeys, String profileUserId) {
+        long now = System.currentTimeMillis();
+        return new ChangeRecord(nextSequence(now), new Date(now), websafeConferenceKeys, profileUserId);
+    }
+
+    /**
+     * Saves the record of a write. Has to be called in the transaction of the write. The put is
+     * waited for, so that a failed put throws in the transaction, which is then retried, instead of
+     * failing its commit.
+     *
+     * @param websafeConferenceKeys The websafe keys of the conferences written.
+     * @param profileUserId The userId of the profile written, null when no profile is written.
+     */
+    public static void append(Collection<String> websafeConferenceKeys, String profileUserId) {
+        ofy().save().entity(newRecord(websafeConferenceKeys, profileUserId)).now();
+    }
+
+    /**
+     * Saves the record of a write of a single conference and, when it is not null, a profile.
+     *
+     * @param websafeConferenceKey The websafe key of the conference written.
+     * @param profileUserId The userId of the profile written, null when no profile is written.
+     */
+    public static void appendConference(String websafeConferenceKey, String profileUserId) {
+        append(Collections.singletonList(websafeConferenceKey), profileUserId);
+    }
+
+    /**
+     * Takes the next sequence from the memcache counter.
+     *
+     * @throws IllegalStateException when memcache is not available. A sequence made up from the
+     *         clock could run ahead of the counter, which would then hand out lower sequences once
+     *         memcache is back and clients past them would miss those changes, so the write fails
+     *         and its transaction rolls back instead.
+     */
+    private static long nextSequence(long now) {
+        Long sequence = memcache().increment(SEQUENCE_KEY, 1L, now * SEQUENCES_PER_MILLI);
+        if (sequence == null) {
+            LOG.warning("Could not increment the change sequence");
+            throw new IllegalStateException("The change feed is not available, please try again");
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the settled records after the given sequence, in the order of their sequence.
+     *
+     * @param since The last sequence the client has seen, 0 for all the records.
+     * @param limit The maximum number of records.
+     * @return The records and the sequence to read from next time.
+     */
+    public static Page read(long since, int limit) {
+        ChangeFeedState state = ofy().load().key(ChangeFeedState.createKey()).now();
+        boolean resync = state != null && since < state.getTrimmedThrough();
+
+        Query<ChangeRecord> query = ofy().load().type(ChangeRecord.class);
+        if (since > 0) {
+            query = query.filterKey(">", Key.create(ChangeRecord.class, since));
+        }
+        query = query.orderKey(false).limit(limit + 1);
+
+        long settled = System.currentTimeMillis() - SETTLE_MILLIS;
+        List<ChangeRecord> records = new ArrayList<>(limit);
+        boolean more = false;
+        for (ChangeRecord record : query) {
+            if (record.getTime().getTime() > settled) {
+                break;
+            }
+            if (records.size() == limit) {
+                more = true;
+                break;
+            }
+            records.add(record);
+        }
+        long lastSequence = records.isEmpty() ? since : records.get(records.size() - 1).getSequence();
+        return new Page(records, lastSequence, more, resync);
+    }
+
+    /**
+     * Deletes the records older than RETENTION_MILLIS. The trimmed sequence is saved before the
+     * records are deleted, so a client reading from a deleted record is always told to resync.
+     *
+     * @param deadline The time after which no further batch is deleted, in milliseconds.
+     * @return The number of records deleted.
+     */
+    public static int trim(long deadline) {
+        Date cutoff = new Date(System.currentTimeMillis() - RETENTION_MILLIS);
+        QueryResultIterator<Key<ChangeRecord>> iterator = ofy().load().type(ChangeRecord.class)
+                .filter("time <", cutoff).chunk(TRIM_BATCH_SIZE).keys().iterator();
+
+        int deleted = 0;
+        List<Key<ChangeRecord>> batch = new ArrayList<>(TRIM_BATCH_SIZE);
+        while (iterator.hasNext() && System.currentTimeMillis() < deadline) {
+            batch.add(iterator.next());
+            if (batch.size() == TRIM_BATCH_SIZE) {
+                deleteBatch(batch);
+                deleted += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleteBatch(batch);
+            deleted += batch.size();
+        }
+        return deleted;
+    }
+
+    private static void deleteBatch(List<Key<ChangeRecord>> keys) {
+        long highest = 0;
+        for (Key<ChangeRecord> key : keys) {
+            highest = Math.max(highest, key.getId());
+        }
+        final long trimmedThrough = highest;
+        ofy().transact(new VoidWork() {
+            @Override
+            public void vrun() {
+                ChangeFeedState state = ofy().load().key(ChangeFeedState.createKey()).now();
+                if (state == null) {
+                    state = new ChangeFeedState();
+                }
+                state.trimThrough(trimmedThrough);
+                ofy().save().entity(state).now();
+            }
+        });
+        ofy().delete().keys(keys).now();
+    }
+}
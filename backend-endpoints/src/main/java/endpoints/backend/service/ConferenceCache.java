@@ -0,0 +1,196 @@
+package endpoints.backend.service;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.LoadResult;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import endpoints.backend.domain.Conference;
+import endpoints.backend.domain.Profile;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Read-through cache for conference reads, backed by memcache.
+ *
+ * Single conferences are cached by their websafe key. Query result pages are cached under a
+ * generation number which is bumped by invalidate, so every cached page becomes unreachable
+ * at once when any conference changes, without having to know which pages contained it.
+ */
+public class ConferenceCache {
+    private static final String NAMESPACE = "ConferenceCache";
+    private static final String CONFERENCE_PREFIX = "CONFERENCE:";
+    private static final String PAGE_PREFIX = "PAGE:";
+    private static final String PAGE_GENERATION_KEY = "PAGE_GENERATION";
+
+    /** Conferences are invalidated explicitly, the expiration only bounds the staleness of organizer names. */
+    private static final Expiration CONFERENCE_EXPIRATION = Expiration.byDeltaSeconds(10 * 60);
+
+    /** Pages are short lived, they are cheap to rebuild and most of them are never read twice. */
+    private static final Expiration PAGE_EXPIRATION = Expiration.byDeltaSeconds(60);
+
+    private static final AtomicLong conferenceHits = new AtomicLong();
+    private static final AtomicLong conferenceMisses = new AtomicLong();
+    private static final AtomicLong pageHits = new AtomicLong();
+    private static final AtomicLong pageMisses = new AtomicLong();
+
+    /**
+     * Loads a value on a cache miss.
+     * @param <T> the type of the value.
+     * @param <E> the exception the loader may throw.
+     */
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+
+    /** A page of a conference query as it is stored in memcache. */
+    public static class Page implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<Conference> items;
+        private final String nextPageToken;
+
+        public Page(Collection<Conference> items, String nextPageToken) {
+            this.items = new ArrayList<>(items);
+            this.nextPageToken = nextPageToken;
+        }
+
+        public List<Conference> getItems() {
+            return items;
+        }
+
+        public String getNextPageToken() {
+            return nextPageToken;
+        }
+    }
+
+    private static MemcacheService memcache() {
+        return MemcacheServiceFactory.getMemcacheService(NAMESPACE);
+    }
+
+    /**
+     * Returns the conference with the given websafe key, from memcache when it is cached.
+     * On a miss the conference and its organizer's profile are loaded concurrently and
+     * the organizer's display name is attached before the conference is cached.
+     *
+     * @param websafeConferenceKey The websafe key of the conference.
+     * @return The conference, null when there is no such conference.
+     * @throws IllegalArgumentException when the key is not a valid websafe key.
+     */
+    public static Conference getConference(String websafeConferenceKey) {
+        String cacheKey = CONFERENCE_PREFIX + websafeConferenceKey;
+        Conference conference = (Conference) memcache().get(cacheKey);
+        if (conference != null) {
+            conferenceHits.incrementAndGet();
+            return conference;
+        }
+        conferenceMisses.incrementAndGet();
+
+        Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+        // The parent of the conference is the organizer's profile, so both loads can run concurrently
+        LoadResult<Conference> conferenceResult = ofy().load().key(conferenceKey);
+        LoadResult<Profile> organizerResult = ofy().load().key(conferenceKey.<Profile>getParent());
+        conference = conferenceResult.now();
+        if (conference == null) {
+            return null;
+        }
+        conference.attachOrganizer(organizerResult.now());
+        memcache().put(cacheKey, conference, CONFERENCE_EXPIRATION);
+        return conference;
+    }
+
+    /**
+     * Returns the cached page for the given query, loading and caching it on a miss.
+     *
+     * @param queryKey A string identifying the query, its page size and its cursor.
+     * @param loader Loads the page from the datastore on a miss.
+     * @return The page.
+     * @throws E when the loader fails.
+     */
+    public static <E extends Exception> Page getPage(String queryKey, Loader<Page, E> loader) throws E {
+        MemcacheService memcache = memcache();
+        Long generation = (Long) memcache.get(PAGE_GENERATION_KEY);
+        if (generation == null) {
+            generation = 0L;
+        }
+        String cacheKey = PAGE_PREFIX + generation + ":" + queryKey;
+
+        Page page = (Page) memcache.get(cacheKey);
+        if (page != null) {
+            pageHits.incrementAndGet();
+            return page;
+        }
+        pageMisses.incrementAndGet();
+
+        page = loader.load();
+        memcache.put(cacheKey, page, PAGE_EXPIRATION);
+        return page;
+    }
+
+    /**
+     * Removes the given conference from the cache and drops all the cached pages.
+     * Has to be called whenever a conference is created, updated or its seats change.
+     *
+     * @param conference The conference that has changed.
+     */
+    public static void invalidate(Conference conference) {
+        invalidate(conference.getWebsafeKey());
+    }
+
+    /**
+     * Removes the conference with the given websafe key from the cache and drops all the cached pages.
+     *
+     * @param websafeConferenceKey The websafe key of the conference that has changed.
+     */
+    public static void invalidate(String websafeConferenceKey) {
+        memcache().delete(CONFERENCE_PREFIX + websafeConferenceKey);
+        invalidatePages();
+    }
+
+    /**
+     * Removes the conferences of the given organizer from the cache and drops all the cached pages.
+     * Has to be called when the organizer's display name changes, as the cached conferences hold it.
+     * The conferences are children of the organizer's profile, so their keys are read with an
+     * ancestor query, which is strongly consistent.
+     *
+     * @param organizerKey The key of the organizer's profile.
+     */
+    public static void invalidateOrganizer(Key<Profile> organizerKey) {
+        List<String> cacheKeys = new ArrayList<>();
+        for (Key<Conference> conferenceKey : ofy().load().type(Conference.class).ancestor(organizerKey).keys()) {
+            cacheKeys.add(CONFERENCE_PREFIX + conferenceKey.getString());
+        }
+        memcache().deleteAll(cacheKeys);
+        invalidatePages();
+    }
+
+    /**
+     * Drops all the cached pages, e.g. after new conferences have been created.
+     */
+    public static void invalidatePages() {
+        memcache().increment(PAGE_GENERATION_KEY, 1L, 0L);
+    }
+
+    public static long getConferenceHits() {
+        return conferenceHits.get();
+    }
+
+    public static long getConferenceMisses() {
+        return conferenceMisses.get();
+    }
+
+    public static long getPageHits() {
+        return pageHits.get();
+    }
+
+    public static long getPageMisses() {
+        return pageMisses.get();
+    }
+}
@@ -0,0 +1,268 @@
+package endpoints.backend.service;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import endpoints.backend.domain.Conference;
+import endpoints.backend.domain.FacetShard;
+import endpoints.backend.form.ConferenceQueryForm.Field;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Counts the conferences per city, per topic and per start month, the values the conference
+ * list can be filtered by, so that the filters can show how many conferences match each value
+ * without reading the conferences.
+ *
+ * The counts are kept in FacetShards. A change of the conferences adds its deltas to a single
+ * random shard in a transaction, which joins the caller's transaction when there is one, so
+ * the counts change together with the conferences. Readers get the sum of all the shards,
+ * cached in memcache for FACETS_EXPIRATION. The cache is dropped by facetsChanged once the
+ * change has been committed, dropping it earlier would let a reader cache the old counts again.
+ */
+public class FacetCounterService {
+    /**
+     * Number of shards. rebuild writes every shard in a single cross-group transaction, which is
+     * limited to 25 entity groups.
+     */
+    private static final int SHARD_COUNT = 20;
+
+    private static final String NAMESPACE = "Facets";
+    private static final String FACETS_KEY = "FACETS";
+
+    /** The cache is dropped on every change, the expiration only bounds a change racing with a reader. */
+    private static final Expiration FACETS_EXPIRATION = Expiration.byDeltaSeconds(60);
+
+    /** Number of conferences read at a time by rebuild. */
+    private static final int REBUILD_CHUNK_SIZE = 500;
+
+    private static final Random random = new Random();
+
+    /** The number of conferences having the given value in the given field. */
+    public static class FacetCount implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Field field;
+        private final String value;
+        private final long count;
+
+        public FacetCount(Field field, String value, long count) {
+            this.field = field;
+            this.value = value;
+            this.count = count;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private static MemcacheService memcache() {
+        return MemcacheServiceFactory.getMemcacheService(NAMESPACE);
+    }
+
+    /**
+     * Counts a change of a conference. Has to be called in the transaction writing the change,
+     * with a copy of the conference as it was before. Call facetsChanged after the commit.
+     *
+     * @param before The conference before the change, null when it has been created.
+     * @param after The conference after the change, null when it has been deleted.
+     */
+    public static void conferenceChanged(Conference before, Conference after) {
+        Map<String, Long> deltas = new HashMap<>();
+        if (before != null) {
+            addFacets(deltas, before, -1);
+        }
+        if (after != null) {
+            addFacets(deltas, after, 1);
+        }
+        applyDeltas(deltas);
+    }
+
+    /**
+     * Counts new conferences with a single write, e.g. after an import. Call facetsChanged after
+     * the write has been committed.
+     *
+     * @param conferences The conferences which have been created.
+     */
+    public static void conferencesCreated(Collection<Conference> conferences) {
+        Map<String, Long> deltas = new HashMap<>();
+        for (Conference conference : conferences) {
+            addFacets(deltas, conference, 1);
+        }
+        applyDeltas(deltas);
+    }
+
+    /**
+     * Drops the cached counts after a change has been committed. Must not be called inside a
+     * transaction.
+     */
+    public static void facetsChanged() {
+        memcache().delete(FACETS_KEY);
+    }
+
+    /**
+     * Returns the number of conferences per city, per topic and per start month, ordered by
+     * field and then by descending count.
+     *
+     * @return The counts of all the values having at least one conference.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<FacetCount> getFacets() {
+        ArrayList<FacetCount> facets = (ArrayList<FacetCount>) memcache().get(FACETS_KEY);
+        if (facets != null) {
+            return facets;
+        }
+
+        Map<String, Long> counts = new HashMap<>();
+        for (FacetShard shard : ofy().load().keys(shardKeys()).values()) {
+            for (Map.Entry<String, Long> count : shard.getCounts().entrySet()) {
+                add(counts, count.getKey(), count.getValue());
+            }
+        }
+
+        facets = new ArrayList<>(counts.size());
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            if (count.getValue() > 0) {
+                String facet = count.getKey();
+                int separator = facet.indexOf(':');
+                facets.add(new FacetCount(Field.valueOf(facet.substring(0, separator)),
+                        facet.substring(separator + 1), count.getValue()));
+            }
+        }
+        Collections.sort(facets, new Comparator<FacetCount>() {
+            @Override
+            public int compare(FacetCount a, FacetCount b) {
+                if (a.field != b.field) {
+                    return a.field.compareTo(b.field);
+                }
+                if (a.count != b.count) {
+                    return a.count < b.count ? 1 : -1;
+                }
+                return a.value.compareTo(b.value);
+            }
+        });
+
+        memcache().put(FACETS_KEY, facets, FACETS_EXPIRATION);
+        return facets;
+    }
+
+    /**
+     * Recounts all the conferences and replaces the counts of all the shards, e.g. for counting
+     * the conferences created before the facets were counted. Conferences created while the
+     * recount runs may be counted twice or not at all, so it should run when nobody is creating
+     * conferences.
+     *
+     * @return The number of conferences counted.
+     */
+    public static int rebuild() {
+        final Map<String, Long> counts = new HashMap<>();
+        int conferences = 0;
+        for (Conference conference : ofy().load().type(Conference.class).chunk(REBUILD_CHUNK_SIZE)) {
+            addFacets(counts, conference, 1);
+            if (++conferences % REBUILD_CHUNK_SIZE == 0) {
+                // The counted conferences are not needed anymore, don't keep them in the session cache
+                ofy().clear();
+            }
+        }
+
+        ofy().transact(new VoidWork() {
+            @Override
+            public void vrun() {
+                List<FacetShard> shards = new ArrayList<>(SHARD_COUNT);
+                for (int i = 0; i < SHARD_COUNT; i++) {
+                    FacetShard shard = new FacetShard(i);
+                    shard.reset(i == 0 ? counts : Collections.<String, Long>emptyMap());
+                    shards.add(shard);
+                }
+                ofy().save().entities(shards);
+            }
+        });
+        memcache().delete(FACETS_KEY);
+        return conferences;
+    }
+
+    /**
+     * Adds the facets of the conference to the deltas with the given sign. A topic given twice
+     * counts once.
+     */
+    private static void addFacets(Map<String, Long> deltas, Conference conference, long sign) {
+        if (conference.getCity() != null) {
+            add(deltas, Field.CITY + ":" + conference.getCity(), sign);
+        }
+        if (conference.getTopics() != null) {
+            Set<String> topics = new LinkedHashSet<>(conference.getTopics());
+            for (String topic : topics) {
+                add(deltas, Field.TOPIC + ":" + topic, sign);
+            }
+        }
+        // The month is only set when the conference has a start date
+        if (conference.getMonth() != 0) {
+            add(deltas, Field.MONTH + ":" + conference.getMonth(), sign);
+        }
+    }
+
+    private static void add(Map<String, Long> counts, String facet, long delta) {
+        Long count = counts.get(facet);
+        counts.put(facet, (count == null ? 0 : count) + delta);
+    }
+
+    /**
+     * Adds the deltas to a random shard, deltas of zero are left out.
+     */
+    private static void applyDeltas(Map<String, Long> deltas) {
+        final Map<String, Long> changes = new HashMap<>();
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            if (delta.getValue() != 0) {
+                changes.put(delta.getKey(), delta.getValue());
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        final int index = random.nextInt(SHARD_COUNT);
+        ofy().transact(new VoidWork() {
+            @Override
+            public void vrun() {
+                FacetShard shard = ofy().load().key(FacetShard.createKey(index)).now();
+                if (shard == null) {
+                    shard = new FacetShard(index);
+                }
+                shard.add(changes);
+                ofy().save().entity(shard);
+            }
+        });
+    }
+
+    private static List<Key<FacetShard>> shardKeys() {
+        List<Key<FacetShard>> keys = new ArrayList<>(SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            keys.add(FacetShard.createKey(i));
+        }
+        return keys;
+    }
+}
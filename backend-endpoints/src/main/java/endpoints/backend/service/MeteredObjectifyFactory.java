@@ -0,0 +1,17 @@
+package endpoints.backend.service;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceConfig;
+import com.googlecode.objectify.ObjectifyFactory;
+
+/**
+ * ObjectifyFactory reporting the datastore operations to ApiMetrics. The datastore service is
+ * metered below the global cache, so only the operations reaching the datastore are counted.
+ */
+public class MeteredObjectifyFactory extends ObjectifyFactory {
+
+    @Override
+    protected AsyncDatastoreService createRawAsyncDatastoreService(DatastoreServiceConfig cfg) {
+        return ApiMetrics.meter(super.createRawAsyncDatastoreService(cfg));
+    }
+}
@@ -3,16 +3,50 @@ package endpoints.backend.service;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.impl.EntityMemcacheStats;
 
+import endpoints.backend.domain.AppEngineUser;
+import endpoints.backend.domain.ChangeFeedState;
+import endpoints.backend.domain.ChangeRecord;
 import endpoints.backend.domain.Conference;
+import endpoints.backend.domain.FacetShard;
 import endpoints.backend.domain.Profile;
+import endpoints.backend.domain.SearchPosting;
+import endpoints.backend.domain.SeatShard;
 
-/** Custom Objectify Service that this application should use. */
+/**
+ * Custom Objectify Service that this application should use.
+ *
+ * Caching policy of the registered entities, set with @Cache on each entity class:
+ * Profile and Conference are read far more often than they are written, so they are kept in
+ * the Objectify global cache (memcache) with the expirations below. AppEngineUser is never
+ * cached, its whole point is to read back the userId filled in by the datastore, and
+ * write-heavy counters such as SeatShard and FacetShard must not be cached either, every write
+ * would just evict them. ChangeRecords are written once and read through queries, which the
+ * cache does not serve, while the single ChangeFeedState is read by every change feed request.
+ */
 public class OfyService {
-    /** This static block ensure the entity registration. */
+    /** Expiration of Profiles in the global cache, they only change when the user saves the profile. */
+    public static final int PROFILE_CACHE_EXPIRATION_SECONDS = 60 * 60;
+
+    /** Expiration of Conferences in the global cache. */
+    public static final int CONFERENCE_CACHE_EXPIRATION_SECONDS = 10 * 60;
+
+    /**
+     * This static block ensure the entity registration.
+     * The factory is replaced first, ApiMetricsFilter loads this class at startup so that no
+     * request begins a session with the default factory.
+     */
     static {
+        ObjectifyService.setFactory(new MeteredObjectifyFactory());
         factory().register(Profile.class);
         factory().register(Conference.class);
+        factory().register(SeatShard.class);
+        factory().register(FacetShard.class);
+        factory().register(SearchPosting.class);
+        factory().register(ChangeRecord.class);
+        factory().register(ChangeFeedState.class);
+        factory().register(AppEngineUser.class);
     }
 
     /**
@@ -31,4 +65,13 @@ public class OfyService {
     public static ObjectifyFactory factory() {
         return ObjectifyService.factory();
     }
+
+    /**
+     * Use this static method for getting the hits and misses of the global cache per kind,
+     * e.g. for checking how many datastore reads the cache saves.
+     * @return the global cache statistics.
+     */
+    public static EntityMemcacheStats globalCacheStats() {
+        return factory().getMemcacheStats();
+    }
 }
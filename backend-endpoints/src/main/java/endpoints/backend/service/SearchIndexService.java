@@ -0,0 +1,255 @@
+package endpoints.backend.service;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import endpoints.backend.domain.Conference;
+import endpoints.backend.domain.SearchPosting;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Full-text search over the name, description, topics and city of the conferences.
+ *
+ * The text is split into lower case tokens and every conference gets a SearchPosting per
+ * distinct token, weighted by the fields the token occurs in. A search treats every term of the
+ * query as a prefix. The rarest term is scanned first, every one of its postings is read as a range
+ * scan on the indexed token projected on the weight. The other terms are then checked on the few
+ * matching conferences only, or scanned in full as well when there are still many of them. The
+ * conferences matching all the terms are ranked by the sum of their weights and the ranked keys
+ * are cached for paging through the results.
+ */
+public class SearchIndexService {
+    private static final int NAME_WEIGHT = 8;
+    private static final int TOPIC_WEIGHT = 4;
+    private static final int CITY_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    /** Shorter tokens are not indexed, they would match nearly every conference. */
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    /** Longer tokens are not indexed, they are hardly ever searched for. */
+    private static final int MAX_TOKEN_LENGTH = 50;
+
+    /**
+     * Maximum number of postings of a conference, the most relevant tokens are kept. A conference
+     * and its postings are written in the same batch, which is limited to 500 entities.
+     */
+    public static final int MAX_POSTINGS_PER_CONFERENCE = 200;
+
+    /** Number of postings counted per term to find the rarest one, a count this high means many. */
+    private static final int PROBE_LIMIT = 1000;
+
+    /** Number of postings read per batch when scanning every posting of a term. */
+    private static final int SCAN_CHUNK_SIZE = 1000;
+
+    /** Up to this many matching conferences a term is checked per conference instead of scanned. */
+    private static final int MAX_CONFERENCES_CHECKED = 50;
+
+    /** Maximum number of terms of a query, the others are ignored. */
+    private static final int MAX_QUERY_TERMS = 5;
+
+    private static final String NAMESPACE = "Search";
+
+    /** Results are not invalidated, new and changed conferences are found once they expire. */
+    private static final Expiration RESULTS_EXPIRATION = Expiration.byDeltaSeconds(60);
+
+    private static MemcacheService memcache() {
+        return MemcacheServiceFactory.getMemcacheService(NAMESPACE);
+    }
+
+    /**
+     * Splits the text into lower case tokens of letters and digits.
+     *
+     * @param text The text to split, may be null.
+     * @return The distinct tokens of the text in the order they occur.
+     */
+    public static List<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return new ArrayList<>();
+        }
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean tokenChar = i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                int length = i - start;
+                if (length >= MIN_TOKEN_LENGTH && length <= MAX_TOKEN_LENGTH) {
+                    tokens.add(lowerCase.substring(start, i));
+                }
+                start = -1;
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Creates the postings of a new conference, they have to be saved together with the conference.
+     * Conferences are not edited after they are created, so the postings never have to be replaced.
+     *
+     * @param conference A conference with its id.
+     * @return The postings of the conference, at most MAX_POSTINGS_PER_CONFERENCE.
+     */
+    public static List<SearchPosting> createPostings(Conference conference) {
+        final Map<String, Integer> weights = new HashMap<>();
+        addWeights(weights, conference.getName(), NAME_WEIGHT);
+        if (conference.getTopics() != null) {
+            for (String topic : conference.getTopics()) {
+                addWeights(weights, topic, TOPIC_WEIGHT);
+            }
+        }
+        addWeights(weights, conference.getCity(), CITY_WEIGHT);
+        addWeights(weights, conference.getDescription(), DESCRIPTION_WEIGHT);
+
+        List<String> tokens = new ArrayList<>(weights.keySet());
+        if (tokens.size() > MAX_POSTINGS_PER_CONFERENCE) {
+            Collections.sort(tokens, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return weights.get(b) - weights.get(a);
+                }
+            });
+            tokens = tokens.subList(0, MAX_POSTINGS_PER_CONFERENCE);
+        }
+
+        Key<Conference> conferenceKey = conference.getKey();
+        List<SearchPosting> postings = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            postings.add(new SearchPosting(conferenceKey, token, weights.get(token)));
+        }
+        return postings;
+    }
+
+    /**
+     * Returns the keys of the conferences matching all the terms of the query, the most relevant first.
+     *
+     * @param query The words to search for, each one is a prefix of a token.
+     * @return The websafe keys of the matching conferences, empty when the query has no terms.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> search(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.size() > MAX_QUERY_TERMS) {
+            terms = terms.subList(0, MAX_QUERY_TERMS);
+        }
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        String cacheKey = terms.toString();
+        ArrayList<String> results = (ArrayList<String>) memcache().get(cacheKey);
+        if (results != null) {
+            return results;
+        }
+
+        // The rarest term gives the fewest candidates, only the conferences matching every term are kept
+        final Map<String, Integer> counts = new HashMap<>();
+        for (String term : terms) {
+            counts.put(term, prefixQuery(term).limit(PROBE_LIMIT).keys().list().size());
+        }
+        List<String> ordered = new ArrayList<>(terms);
+        Collections.sort(ordered, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return counts.get(a) - counts.get(b);
+            }
+        });
+
+        final Map<Key<Conference>, Integer> scores = scanTerm(ordered.get(0));
+        for (int i = 1; i < ordered.size() && !scores.isEmpty(); i++) {
+            Map<Key<Conference>, Integer> termScores = scores.size() <= MAX_CONFERENCES_CHECKED
+                    ? checkTerm(scores.keySet(), ordered.get(i))
+                    : scanTerm(ordered.get(i));
+            scores.keySet().retainAll(termScores.keySet());
+            for (Map.Entry<Key<Conference>, Integer> score : scores.entrySet()) {
+                score.setValue(score.getValue() + termScores.get(score.getKey()));
+            }
+        }
+
+        List<Key<Conference>> ranked = new ArrayList<>(scores.keySet());
+        Collections.sort(ranked, new Comparator<Key<Conference>>() {
+            @Override
+            public int compare(Key<Conference> a, Key<Conference> b) {
+                int scoreA = scores.get(a);
+                int scoreB = scores.get(b);
+                return scoreA != scoreB ? scoreB - scoreA : a.compareTo(b);
+            }
+        });
+
+        results = new ArrayList<>(ranked.size());
+        for (Key<Conference> conferenceKey : ranked) {
+            results.add(conferenceKey.getString());
+        }
+        memcache().put(cacheKey, results, RESULTS_EXPIRATION);
+        return results;
+    }
+
+    /**
+     * Sums up the weights of the tokens starting with the given prefix per conference, every
+     * posting of the prefix is read.
+     */
+    private static Map<Key<Conference>, Integer> scanTerm(String prefix) {
+        Map<Key<Conference>, Integer> scores = new LinkedHashMap<>();
+        Iterable<SearchPosting> postings = prefixQuery(prefix)
+                .project("weight")
+                .chunk(SCAN_CHUNK_SIZE);
+        for (SearchPosting posting : postings) {
+            addScore(scores, posting.getConferenceKey(), posting.getWeight());
+        }
+        return scores;
+    }
+
+    /**
+     * Sums up the weights of the tokens starting with the given prefix for the given conferences
+     * only. The id of a posting is its token, so the prefix is a key range within the conference.
+     */
+    private static Map<Key<Conference>, Integer> checkTerm(Set<Key<Conference>> conferenceKeys, String prefix) {
+        Map<Key<Conference>, Integer> scores = new LinkedHashMap<>();
+        for (Key<Conference> conferenceKey : conferenceKeys) {
+            List<SearchPosting> postings = ofy().load().type(SearchPosting.class)
+                    .ancestor(conferenceKey)
+                    .filterKey(">=", Key.create(conferenceKey, SearchPosting.class, prefix))
+                    .filterKey("<", Key.create(conferenceKey, SearchPosting.class, prefix + '\ufffd'))
+                    .list();
+            for (SearchPosting posting : postings) {
+                addScore(scores, conferenceKey, posting.getWeight());
+            }
+        }
+        return scores;
+    }
+
+    private static Query<SearchPosting> prefixQuery(String prefix) {
+        return ofy().load().type(SearchPosting.class)
+                .filter("token >=", prefix)
+                .filter("token <", prefix + '\ufffd');
+    }
+
+    private static void addScore(Map<Key<Conference>, Integer> scores, Key<Conference> conferenceKey, int weight) {
+        Integer score = scores.get(conferenceKey);
+        scores.put(conferenceKey, (score == null ? 0 : score) + weight);
+    }
+
+    private static void addWeights(Map<String, Integer> weights, String text, int weight) {
+        for (String token : tokenize(text)) {
+            Integer current = weights.get(token);
+            weights.put(token, (current == null ? 0 : current) + weight);
+        }
+    }
+}
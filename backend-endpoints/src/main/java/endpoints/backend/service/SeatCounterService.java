@@ -0,0 +1,379 @@
+package endpoints.backend.service;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+import com.googlecode.objectify.Work;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import endpoints.backend.domain.Conference;
+import endpoints.backend.domain.SeatShard;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Counts the available seats of conferences with sharded counters.
+ *
+ * The seats of a conference are spread over SeatShards, a booking decrements a single shard in
+ * its own small transaction, so registrations for a popular conference do not all contend for
+ * the conference entity group. Readers see the sum of the shards, which is cached in memcache
+ * and kept up to date by the bookings. The indexed seatsAvailable of the conference entity is
+ * refreshed from the shards by a task queued at most once every RECONCILE_INTERVAL_SECONDS per
+ * conference and run RECONCILE_INTERVAL_SECONDS later, so it sees every booking of its interval
+ * and queries on it are at most that far behind, without writing the conference on every booking.
+ *
+ * Conferences created before sharding (seatShards == 0) keep counting on the entity itself.
+ */
+public class SeatCounterService {
+    /**
+     * Number of shards of a new conference. A booking inside the caller's transaction may enlist
+     * every shard plus the caller's own entity groups, and a cross-group transaction is limited
+     * to 25 entity groups.
+     */
+    public static final int DEFAULT_SHARD_COUNT = 10;
+
+    private static final Logger LOG = Logger.getLogger(SeatCounterService.class.getName());
+
+    private static final int RECONCILE_INTERVAL_SECONDS = 10;
+
+    /** The URL of SeatReconcileServlet, which runs the reconcile tasks. */
+    private static final String RECONCILE_URL = "/admin/seats/reconcile";
+
+    private static final String NAMESPACE = "SeatCounter";
+    private static final String SEATS_PREFIX = "SEATS:";
+    private static final Expiration SEATS_EXPIRATION = Expiration.byDeltaSeconds(60);
+
+    private static final Random random = new Random();
+
+    private static MemcacheService memcache() {
+        return MemcacheServiceFactory.getMemcacheService(NAMESPACE);
+    }
+
+    /**
+     * Spreads the available seats of a new conference over its shards.
+     * The returned shards have to be saved together with the conference.
+     *
+     * @param conference A conference which has not been saved yet.
+     * @return The shards of the conference.
+     */
+    public static List<SeatShard> createShards(Conference conference) {
+        int seats = conference.getSeatsAvailable();
+        int shardCount = Math.max(1, Math.min(DEFAULT_SHARD_COUNT, seats));
+        Key<Conference> conferenceKey = conference.getKey();
+
+        List<SeatShard> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            // The first shards take the remainder of the division
+            int capacity = seats / shardCount + (i < seats % shardCount ? 1 : 0);
+            shards.add(new SeatShard(conferenceKey, i, capacity));
+        }
+        conference.shardSeats(shardCount);
+        return shards;
+    }
+
+    /**
+     * Books the given number of seats on a single shard. It starts with a random shard and falls
+     * back to the others when a shard has not enough seats left, so the seats of a booking are
+     * never split over shards.
+     *
+     * Joins the current transaction when there is one, so that the booking commits together with
+     * the caller's writes. Call seatsChanged after the booking has been committed.
+     *
+     * @param conference The conference to book the seats of.
+     * @param number The number of seats to book.
+     * @return true when the seats are booked, false when there are not enough seats.
+     */
+    public static boolean bookSeats(final Conference conference, final int number) {
+        return bookSeats(conference, number, DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * Books the given number of seats like bookSeats, trying at most the given number of shards,
+     * which bounds the entity groups the booking enlists in the caller's transaction.
+     *
+     * @param conference The conference to book the seats of.
+     * @param number The number of seats to book.
+     * @param maxShards The maximum number of shards to try.
+     * @return true when the seats are booked, false when there are not enough seats on the shards tried.
+     */
+    public static boolean bookSeats(final Conference conference, final int number, final int maxShards) {
+        if (conference.getSeatShards() == 0) {
+            return updateUnshardedSeats(conference.getKey(), -number);
+        }
+
+        for (final Key<SeatShard> shardKey : candidateShards(conference, number, true, maxShards)) {
+            boolean booked = ofy().transact(new Work<Boolean>() {
+                @Override
+                public Boolean run() {
+                    SeatShard shard = ofy().load().key(shardKey).now();
+                    if (shard == null || shard.getSeatsAvailable() < number) {
+                        return false;
+                    }
+                    shard.bookSeats(number);
+                    ofy().save().entity(shard).now();
+                    return true;
+                }
+            });
+            if (booked) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives back the given number of seats to a single shard which has room for them.
+     *
+     * Joins the current transaction when there is one. Call seatsChanged after the seats have been
+     * given back and committed.
+     *
+     * @param conference The conference to give the seats back to.
+     * @param number The number of seats to give back.
+     * @return true when the seats are given back, false when they would exceed the capacity.
+     */
+    public static boolean giveBackSeats(final Conference conference, final int number) {
+        return giveBackSeats(conference, number, DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * Gives back the given number of seats like giveBackSeats, trying at most the given number of
+     * shards, which bounds the entity groups it enlists in the caller's transaction.
+     *
+     * @param conference The conference to give the seats back to.
+     * @param number The number of seats to give back.
+     * @param maxShards The maximum number of shards to try.
+     * @return true when the seats are given back, false when the shards tried have no room for them.
+     */
+    public static boolean giveBackSeats(final Conference conference, final int number, final int maxShards) {
+        if (conference.getSeatShards() == 0) {
+            return updateUnshardedSeats(conference.getKey(), number);
+        }
+
+        for (final Key<SeatShard> shardKey : candidateShards(conference, number, false, maxShards)) {
+            boolean givenBack = ofy().transact(new Work<Boolean>() {
+                @Override
+                public Boolean run() {
+                    SeatShard shard = ofy().load().key(shardKey).now();
+                    if (shard == null || shard.getSeatsAvailable() + number > shard.getCapacity()) {
+                        return false;
+                    }
+                    shard.giveBackSeats(number);
+                    ofy().save().entity(shard).now();
+                    return true;
+                }
+            });
+            if (givenBack) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns at most maxShards shards which looked like they could take the change when read
+     * outside of a transaction, starting at a random shard. The transaction checks the shard again,
+     * reading them all up front only saves transactions on shards that are already exhausted or full.
+     */
+    private static List<Key<SeatShard>> candidateShards(Conference conference, int number, boolean booking,
+            int maxShards) {
+        List<Key<SeatShard>> shardKeys = getShardKeys(conference);
+        int start = random.nextInt(shardKeys.size());
+        Map<Key<SeatShard>, SeatShard> shards = ofy().transactionless().load().keys(shardKeys);
+
+        List<Key<SeatShard>> candidates = new ArrayList<>(shardKeys.size());
+        for (int i = 0; i < shardKeys.size() && candidates.size() < maxShards; i++) {
+            Key<SeatShard> shardKey = shardKeys.get((start + i) % shardKeys.size());
+            SeatShard shard = shards.get(shardKey);
+            if (shard == null) {
+                continue;
+            }
+            boolean fits = booking ? shard.getSeatsAvailable() >= number
+                    : shard.getSeatsAvailable() + number <= shard.getCapacity();
+            if (fits) {
+                candidates.add(shardKey);
+            }
+        }
+        return candidates;
+    }
+
+    private static List<Key<SeatShard>> getShardKeys(Conference conference) {
+        Key<Conference> conferenceKey = conference.getKey();
+        List<Key<SeatShard>> shardKeys = new ArrayList<>(conference.getSeatShards());
+        for (int i = 0; i < conference.getSeatShards(); i++) {
+            shardKeys.add(SeatShard.createKey(conferenceKey, i));
+        }
+        return shardKeys;
+    }
+
+    /**
+     * Books (negative delta) or gives back (positive delta) seats on a conference without shards.
+     */
+    private static boolean updateUnshardedSeats(final Key<Conference> conferenceKey, final int delta) {
+        return ofy().transact(new Work<Boolean>() {
+            @Override
+            public Boolean run() {
+                Conference conference = ofy().load().key(conferenceKey).now();
+                if (conference == null) {
+                    return false;
+                }
+                try {
+                    if (delta < 0) {
+                        conference.bookSeats(-delta);
+                    } else {
+                        conference.giveBackSeats(delta);
+                    }
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+                ofy().save().entity(conference).now();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Updates the cached number of available seats after a booking has been committed, and
+     * makes sure a reconcile task will refresh the indexed seatsAvailable of the conference.
+     * Must not be called inside a transaction.
+     *
+     * @param conference The conference whose seats have changed.
+     * @param delta The change of the available seats, negative for bookings.
+     */
+    public static void seatsChanged(Conference conference, int delta) {
+        if (conference.getSeatShards() == 0) {
+            // The seats live on the entity, which has been saved already
+            ConferenceCache.invalidate(conference);
+            return;
+        }
+        String websafeKey = conference.getWebsafeKey();
+        memcache().increment(SEATS_PREFIX + websafeKey, delta);
+        queueReconcile(websafeKey);
+    }
+
+    /**
+     * Queues the reconcile task of the current interval of the conference. The task is named after
+     * the interval, so only the first booking of an interval queues it, and it runs one interval
+     * later, after the last booking of its interval.
+     */
+    private static void queueReconcile(String websafeKey) {
+        long interval = System.currentTimeMillis() / (RECONCILE_INTERVAL_SECONDS * 1000L);
+        try {
+            QueueFactory.getDefaultQueue().add(TaskOptions.Builder.withUrl(RECONCILE_URL)
+                    .param("conference", websafeKey)
+                    .taskName("seats-" + websafeKey + "-" + interval)
+                    .countdownMillis(RECONCILE_INTERVAL_SECONDS * 1000L));
+        } catch (TaskAlreadyExistsException e) {
+            // Another booking of this interval has queued it already
+        } catch (RuntimeException e) {
+            // The booking stands, the next booking queues a task again
+            LOG.log(Level.WARNING, "Could not queue the seat reconcile of " + websafeKey, e);
+        }
+    }
+
+    /**
+     * Writes the sum of the shards to the indexed seatsAvailable of the conference, and to the
+     * cached sum, which may have missed a booking racing with attachSeatsAvailable.
+     * Run by the reconcile tasks. The conference is saved only when its seats differ from the sum,
+     * as every save stamps its lastModified and sends it to the clients syncing their changes.
+     *
+     * @param websafeConferenceKey The websafe key of the conference.
+     * @return false when there is no such conference.
+     */
+    public static boolean reconcile(String websafeConferenceKey) {
+        final Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+        Conference conference = ofy().transactionless().load().key(conferenceKey).now();
+        if (conference == null) {
+            return false;
+        }
+        if (conference.getSeatShards() == 0) {
+            // The seats live on the entity
+            return true;
+        }
+        final int seatsAvailable = sumShards(conference,
+                ofy().transactionless().load().keys(getShardKeys(conference)));
+        memcache().put(SEATS_PREFIX + websafeConferenceKey, (long) seatsAvailable, SEATS_EXPIRATION);
+
+        ofy().transact(new VoidWork() {
+            @Override
+            public void vrun() {
+                Conference stored = ofy().load().key(conferenceKey).now();
+                if (stored != null && stored.getSeatsAvailable() != seatsAvailable) {
+                    stored.updateSeatsAvailable(seatsAvailable);
+                    ofy().save().entity(stored).now();
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Replaces the seatsAvailable of the given conferences with the sum of their shards.
+     * The sums are read from memcache, the shards of the conferences missing from memcache are
+     * loaded with a single batch get.
+     *
+     * @param conferences The conferences about to be returned to a client.
+     */
+    public static void attachSeatsAvailable(Collection<Conference> conferences) {
+        Map<String, Conference> sharded = new HashMap<>();
+        for (Conference conference : conferences) {
+            if (conference.getSeatShards() > 0) {
+                sharded.put(SEATS_PREFIX + conference.getWebsafeKey(), conference);
+            }
+        }
+        if (sharded.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> cached = memcache().getAll(sharded.keySet());
+        List<Key<SeatShard>> missingShardKeys = new ArrayList<>();
+        for (Map.Entry<String, Conference> entry : sharded.entrySet()) {
+            Object seatsAvailable = cached.get(entry.getKey());
+            if (seatsAvailable != null) {
+                entry.getValue().updateSeatsAvailable(((Long) seatsAvailable).intValue());
+            } else {
+                missingShardKeys.addAll(getShardKeys(entry.getValue()));
+            }
+        }
+        if (missingShardKeys.isEmpty()) {
+            return;
+        }
+
+        Map<Key<SeatShard>, SeatShard> shards = ofy().transactionless().load().keys(missingShardKeys);
+        Map<String, Long> sums = new HashMap<>();
+        for (Map.Entry<String, Conference> entry : sharded.entrySet()) {
+            if (cached.containsKey(entry.getKey())) {
+                continue;
+            }
+            int seatsAvailable = sumShards(entry.getValue(), shards);
+            entry.getValue().updateSeatsAvailable(seatsAvailable);
+            sums.put(entry.getKey(), (long) seatsAvailable);
+        }
+        // A booking committed after the shards were read has incremented the cached sum already
+        memcache().putAll(sums, SEATS_EXPIRATION, SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    }
+
+    private static int sumShards(Conference conference, Map<Key<SeatShard>, SeatShard> shards) {
+        int seatsAvailable = 0;
+        for (Key<SeatShard> shardKey : getShardKeys(conference)) {
+            SeatShard shard = shards.get(shardKey);
+            if (shard != null) {
+                seatsAvailable += shard.getSeatsAvailable();
+            }
+        }
+        return seatsAvailable;
+    }
+}
@@ -0,0 +1,129 @@
+package endpoints.backend.service;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.users.User;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import endpoints.backend.domain.AppEngineUser;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Resolves the App Engine userId of the users calling the endpoints.
+ *
+ * Android clients do not get a userId in the injected User, it can only be obtained by storing
+ * the User in the datastore and reading it back, see AppEngineUser. The email to userId mapping
+ * never changes, so it is cached in a bounded in-memory LRU map of this instance and in memcache,
+ * and the datastore round trip only happens the first time an email is seen.
+ */
+public class UserIdService {
+    /** Maximum number of emails kept in memory by this instance, the least recently used go first. */
+    private static final int MAX_LOCAL_ENTRIES = 10000;
+
+    private static final String NAMESPACE = "UserId";
+    private static final Expiration MEMCACHE_EXPIRATION = Expiration.byDeltaSeconds(24 * 60 * 60);
+
+    private static final Map<String, String> localCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_LOCAL_ENTRIES;
+                }
+            });
+
+    private static final AtomicLong localHits = new AtomicLong();
+    private static final AtomicLong memcacheHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong datastoreReads = new AtomicLong();
+    private static final AtomicLong datastoreWrites = new AtomicLong();
+
+    private static MemcacheService memcache() {
+        return MemcacheServiceFactory.getMemcacheService(NAMESPACE);
+    }
+
+    /**
+     * Returns the userId of the given user, going to the datastore only when the user's email
+     * is neither in the local cache nor in memcache.
+     *
+     * @param user A User object injected by the cloud endpoints.
+     * @return the App Engine userId for the user.
+     */
+    public static String getUserId(User user) {
+        String userId = user.getUserId();
+        if (userId != null) {
+            return userId;
+        }
+
+        String email = user.getEmail();
+        userId = localCache.get(email);
+        if (userId != null) {
+            localHits.incrementAndGet();
+            return userId;
+        }
+
+        userId = (String) memcache().get(email);
+        if (userId != null) {
+            memcacheHits.incrementAndGet();
+        } else {
+            // Counted before the load, so that a failing load is counted as well
+            misses.incrementAndGet();
+            userId = resolveFromDatastore(user);
+            memcache().put(email, userId, MEMCACHE_EXPIRATION);
+        }
+        localCache.put(email, userId);
+        return userId;
+    }
+
+    /**
+     * Reads the userId from the AppEngineUser of the user, the entity is stored first when the
+     * user does not have one yet.
+     */
+    private static String resolveFromDatastore(User user) {
+        Key<AppEngineUser> key = Key.create(AppEngineUser.class, user.getEmail());
+        datastoreReads.incrementAndGet();
+        AppEngineUser savedUser = ofy().load().key(key).now();
+        if (savedUser == null || savedUser.getUser().getUserId() == null) {
+            AppEngineUser appEngineUser = new AppEngineUser(user);
+            datastoreWrites.incrementAndGet();
+            ofy().save().entity(appEngineUser).now();
+            // Begin new session for not using session cache
+            Objectify objectify = ofy().factory().begin();
+            datastoreReads.incrementAndGet();
+            savedUser = objectify.load().key(appEngineUser.getKey()).now();
+        }
+        return savedUser.getUser().getUserId();
+    }
+
+    public static long getLocalHits() {
+        return localHits.get();
+    }
+
+    public static long getMemcacheHits() {
+        return memcacheHits.get();
+    }
+
+    /**
+     * Returns the number of lookups found neither in the local cache nor in memcache, each of
+     * them has gone to the datastore.
+     * @return the number of misses of both caches.
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getDatastoreReads() {
+        return datastoreReads.get();
+    }
+
+    public static long getDatastoreWrites() {
+        return datastoreWrites.get();
+    }
+}
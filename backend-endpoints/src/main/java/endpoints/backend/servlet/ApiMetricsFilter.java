@@ -0,0 +1,95 @@
+package endpoints.backend.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import endpoints.backend.service.ApiMetrics;
+import endpoints.backend.service.OfyService;
+
+/**
+ * Records the latency and the datastore operations of every API method call in ApiMetrics.
+ *
+ * Endpoints calls the backend at /_ah/spi/{service class}.{method}, so the method is the last
+ * part of the path. The filter has to wrap the ObjectifyFilter, which completes the pending
+ * writes of the call. A call fails when it throws or answers with an error status, which is how
+ * Endpoints reports the exceptions of the API methods.
+ */
+public class ApiMetricsFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        // Installs the metered ObjectifyFactory before the first request, see OfyService
+        OfyService.factory();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        String method = getMethodName((HttpServletRequest) request);
+        StatusResponse statusResponse = new StatusResponse((HttpServletResponse) response);
+        long start = System.nanoTime();
+        Throwable thrown = null;
+        ApiMetrics.startCall();
+        try {
+            chain.doFilter(request, statusResponse);
+        } catch (IOException | ServletException | RuntimeException | Error e) {
+            thrown = e;
+            throw e;
+        } finally {
+            // Endpoints turns the exceptions of the API methods into error responses
+            boolean failed = thrown != null || statusResponse.status >= HttpServletResponse.SC_BAD_REQUEST;
+            ApiMetrics.endCall(method, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public void destroy() {}
+
+    private static String getMethodName(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return uri.substring(Math.max(uri.lastIndexOf('/'), uri.lastIndexOf('.')) + 1);
+    }
+
+    /** Remembers the status of the response, which Servlet 2.5 does not expose. */
+    private static class StatusResponse extends HttpServletResponseWrapper {
+        private int status = SC_OK;
+
+        StatusResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+            super.setStatus(status);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int status, String message) {
+            this.status = status;
+            super.setStatus(status, message);
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            this.status = status;
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            this.status = status;
+            super.sendError(status, message);
+        }
+    }
+}
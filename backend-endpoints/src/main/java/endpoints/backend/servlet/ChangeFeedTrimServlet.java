@@ -0,0 +1,25 @@
+package endpoints.backend.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import endpoints.backend.service.ChangeFeedService;
+
+/**
+ * Deletes the old records of the change feed, called by the cron job in cron.xml.
+ * See ChangeFeedService.trim.
+ */
+public class ChangeFeedTrimServlet extends HttpServlet {
+    /** Time after which no further batch is deleted, well below the request deadline. */
+    private static final long TIME_BUDGET_MILLIS = 45 * 1000;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        int deleted = ChangeFeedService.trim(System.currentTimeMillis() + TIME_BUDGET_MILLIS);
+        resp.setContentType("text/plain");
+        resp.getWriter().println("Deleted " + deleted + " change records.");
+    }
+}
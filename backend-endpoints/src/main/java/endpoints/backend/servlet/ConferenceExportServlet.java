@@ -0,0 +1,120 @@
+package endpoints.backend.servlet;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.googlecode.objectify.cmd.Query;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import endpoints.backend.domain.Conference;
+
+import static endpoints.backend.service.OfyService.ofy;
+
+/**
+ * Exports all the Conferences as newline delimited JSON, one conference per line.
+ *
+ * App Engine standard does not stream responses: flushing does not send anything, the whole
+ * response is buffered and sent at the end, and a response larger than 32MB fails. So every
+ * response stops after BYTE_BUDGET bytes or TIME_BUDGET_MILLIS, whichever comes first, with
+ * {"nextCursor": "..."} as its last line, and the export continues from there with ?cursor=...
+ * in a following request. A complete export has no such line. The conferences are read in chunks
+ * of CHUNK_SIZE and dropped from the session cache after every chunk.
+ */
+public class ConferenceExportServlet extends HttpServlet {
+    private static final int CHUNK_SIZE = 500;
+
+    /** Time after which the export stops, well below the request deadline. */
+    private static final long TIME_BUDGET_MILLIS = 45 * 1000;
+
+    /**
+     * Size after which the export stops. A conference entity is at most 1MB, so the line going
+     * over the budget still keeps the response far below the 32MB limit.
+     */
+    private static final long BYTE_BUDGET = 16 * 1024 * 1024;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        long deadline = System.currentTimeMillis() + TIME_BUDGET_MILLIS;
+
+        Query<Conference> query = ofy().load().type(Conference.class).chunk(CHUNK_SIZE);
+        String cursor = req.getParameter("cursor");
+        if (cursor != null) {
+            try {
+                query = query.startAt(Cursor.fromWebSafeString(cursor));
+            } catch (IllegalArgumentException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor: " + cursor);
+                return;
+            }
+        }
+
+        resp.setContentType("application/x-ndjson");
+        resp.setCharacterEncoding("UTF-8");
+        OutputStream out = resp.getOutputStream();
+
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder line = new StringBuilder(1024);
+
+        QueryResultIterator<Conference> iterator = query.iterator();
+        int written = 0;
+        long bytes = 0;
+        while (iterator.hasNext()) {
+            line.setLength(0);
+            appendConference(line, iterator.next(), dateFormat);
+            byte[] lineBytes = line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+            out.write(lineBytes);
+            bytes += lineBytes.length;
+
+            if (++written % CHUNK_SIZE == 0) {
+                // The exported conferences are not needed anymore, don't keep them in the session cache
+                ofy().clear();
+            }
+            boolean budgetSpent = bytes >= BYTE_BUDGET || System.currentTimeMillis() > deadline;
+            if (budgetSpent && iterator.hasNext()) {
+                line.setLength(0);
+                line.append("{\"nextCursor\":");
+                Json.appendString(line, iterator.getCursor().toWebSafeString()).append("}\n");
+                out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+                break;
+            }
+        }
+        out.flush();
+    }
+
+    private static void appendConference(StringBuilder sb, Conference conference, DateFormat dateFormat) {
+        sb.append("{\"websafeKey\":");
+        Json.appendString(sb, conference.getWebsafeKey());
+        sb.append(",\"name\":");
+        Json.appendString(sb, conference.getName());
+        sb.append(",\"description\":");
+        Json.appendString(sb, conference.getDescription());
+        sb.append(",\"organizerUserId\":");
+        Json.appendString(sb, conference.getOrganizerUserId());
+        sb.append(",\"topics\":");
+        Json.appendStrings(sb, conference.getTopics());
+        sb.append(",\"city\":");
+        Json.appendString(sb, conference.getCity());
+        sb.append(",\"startDate\":");
+        appendDate(sb, conference.getStartDate(), dateFormat);
+        sb.append(",\"endDate\":");
+        appendDate(sb, conference.getEndDate(), dateFormat);
+        sb.append(",\"month\":").append(conference.getMonth());
+        sb.append(",\"maxAttendees\":").append(conference.getMaxAttendees());
+        sb.append(",\"seatsAvailable\":").append(conference.getSeatsAvailable());
+        sb.append('}');
+    }
+
+    private static void appendDate(StringBuilder sb, Date date, DateFormat dateFormat) {
+        Json.appendString(sb, date == null ? null : dateFormat.format(date));
+    }
+}
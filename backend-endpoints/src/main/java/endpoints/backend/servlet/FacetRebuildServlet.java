@@ -0,0 +1,23 @@
+package endpoints.backend.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import endpoints.backend.service.FacetCounterService;
+
+/**
+ * Recounts the facets of all the Conferences, e.g. after deploying the facet counts on top of
+ * existing conferences. See FacetCounterService.rebuild.
+ */
+public class FacetRebuildServlet extends HttpServlet {
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        int conferences = FacetCounterService.rebuild();
+        resp.setContentType("text/plain");
+        resp.getWriter().println("Counted the facets of " + conferences + " conferences.");
+    }
+}
@@ -0,0 +1,70 @@
+package endpoints.backend.servlet;
+
+import java.util.Collection;
+
+/**
+ * Minimal JSON encoding for the servlets, which write their responses without Endpoints.
+ */
+final class Json {
+
+    /** Just making the default constructor private. */
+    private Json() {}
+
+    /**
+     * Appends the given string as a JSON string literal, or null.
+     * @return the given StringBuilder, for chaining.
+     */
+    static StringBuilder appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Appends the given strings as a JSON array of strings, or null.
+     * @return the given StringBuilder, for chaining.
+     */
+    static StringBuilder appendStrings(StringBuilder sb, Collection<String> values) {
+        if (values == null) {
+            return sb.append("null");
+        }
+        sb.append('[');
+        boolean first = true;
+        for (String value : values) {
+            if (!first) {
+                sb.append(',');
+            }
+            appendString(sb, value);
+            first = false;
+        }
+        return sb.append(']');
+    }
+}
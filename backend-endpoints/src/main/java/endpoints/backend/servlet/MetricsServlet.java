@@ -0,0 +1,97 @@
+package endpoints.backend.servlet;
+
+import com.googlecode.objectify.impl.EntityMemcacheStats;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import endpoints.backend.service.ApiMetrics;
+import endpoints.backend.service.ConferenceCache;
+import endpoints.backend.service.OfyService;
+import endpoints.backend.service.UserIdService;
+
+/**
+ * Returns the metrics of this instance as JSON: the latency histogram and the datastore
+ * operations per API method, and the hits and misses of the caches. Every instance counts on
+ * its own, the metrics start from zero when the instance starts.
+ */
+public class MetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("{\"methods\":{");
+        boolean first = true;
+        for (Map.Entry<String, ApiMetrics.MethodStats> method : new TreeMap<>(ApiMetrics.getMethods()).entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            Json.appendString(sb, method.getKey()).append(':');
+            appendMethod(sb, method.getValue());
+        }
+
+        sb.append("},\"caches\":{");
+        appendCache(sb, "conference", ConferenceCache.getConferenceHits(), ConferenceCache.getConferenceMisses());
+        sb.append(',');
+        appendCache(sb, "conferencePage", ConferenceCache.getPageHits(), ConferenceCache.getPageMisses());
+        sb.append(',');
+        appendCache(sb, "userId", UserIdService.getLocalHits() + UserIdService.getMemcacheHits(),
+                UserIdService.getMisses());
+        for (Map.Entry<String, EntityMemcacheStats.Stat> kind
+                : new TreeMap<>(OfyService.globalCacheStats().getStats()).entrySet()) {
+            sb.append(',');
+            appendCache(sb, "global:" + kind.getKey(), kind.getValue().getHits(), kind.getValue().getMisses());
+        }
+        sb.append("}}");
+
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.getWriter().write(sb.toString());
+    }
+
+    private static void appendMethod(StringBuilder sb, ApiMetrics.MethodStats stats) {
+        sb.append("{\"calls\":").append(stats.getCalls());
+        sb.append(",\"failures\":").append(stats.getFailures());
+        sb.append(",\"totalMicros\":").append(stats.getTotalMicros());
+        sb.append(",\"gets\":").append(stats.getGets());
+        sb.append(",\"entitiesRead\":").append(stats.getEntitiesRead());
+        sb.append(",\"puts\":").append(stats.getPuts());
+        sb.append(",\"entitiesWritten\":").append(stats.getEntitiesWritten());
+        sb.append(",\"deletes\":").append(stats.getDeletes());
+        sb.append(",\"queries\":").append(stats.getQueries());
+        // Only the buckets having calls, as upper bound in microseconds and count
+        sb.append(",\"latencyHistogram\":[");
+        boolean first = true;
+        for (int bucket = 0; bucket < ApiMetrics.LATENCY_BUCKETS; bucket++) {
+            long count = stats.getLatencyCount(bucket);
+            if (count == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"ltMicros\":");
+            if (bucket == ApiMetrics.LATENCY_BUCKETS - 1) {
+                sb.append("null");
+            } else {
+                sb.append(1L << bucket);
+            }
+            sb.append(",\"count\":").append(count).append('}');
+        }
+        sb.append("]}");
+    }
+
+    private static void appendCache(StringBuilder sb, String name, long hits, long misses) {
+        Json.appendString(sb, name);
+        sb.append(":{\"hits\":").append(hits).append(",\"misses\":").append(misses);
+        long total = hits + misses;
+        sb.append(",\"hitRate\":").append(total == 0 ? "null" : String.valueOf((double) hits / total)).append('}');
+    }
+}
@@ -0,0 +1,35 @@
+package endpoints.backend.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import endpoints.backend.service.SeatCounterService;
+
+/**
+ * Runs the reconcile tasks queued by SeatCounterService.seatsChanged, which write the sum of the
+ * SeatShards of a conference to its indexed seatsAvailable.
+ */
+public class SeatReconcileServlet extends HttpServlet {
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String websafeConferenceKey = req.getParameter("conference");
+        if (websafeConferenceKey == null) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "The conference parameter is required");
+            return;
+        }
+        boolean found;
+        try {
+            found = SeatCounterService.reconcile(websafeConferenceKey);
+        } catch (IllegalArgumentException e) {
+            found = false;
+        }
+        // A missing conference is answered with success too, retrying the task would not help
+        resp.setContentType("text/plain");
+        resp.getWriter().println(found ? "Reconciled " + websafeConferenceKey
+                : "No Conference found with key: " + websafeConferenceKey);
+    }
+}
@@ -3,21 +3,61 @@ package endpoints.backend.spi;
 import com.google.api.server.spi.config.Api;
 import com.google.api.server.spi.config.ApiMethod;
 import com.google.api.server.spi.config.ApiMethod.HttpMethod;
+import com.google.api.server.spi.config.ApiNamespace;
+import com.google.api.server.spi.config.Nullable;
+import com.google.api.server.spi.response.BadRequestException;
+import com.google.api.server.spi.response.CollectionResponse;
+import com.google.api.server.spi.response.ConflictException;
+import com.google.api.server.spi.response.NotFoundException;
 import com.google.api.server.spi.response.UnauthorizedException;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.users.User;
 import com.googlecode.objectify.Key;
-import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.LoadResult;
+import com.googlecode.objectify.Result;
+import com.googlecode.objectify.Work;
 import com.googlecode.objectify.cmd.Query;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Named;
 
 import endpoints.backend.Constants;
-import endpoints.backend.domain.AppEngineUser;
+import endpoints.backend.domain.ChangeRecord;
+import endpoints.backend.domain.CompactConferenceList;
 import endpoints.backend.domain.Conference;
+import endpoints.backend.domain.ConferenceSummary;
 import endpoints.backend.domain.Profile;
 import endpoints.backend.form.ConferenceForm;
+import endpoints.backend.form.ConferenceImportForm;
+import endpoints.backend.form.ConferenceQueryForm;
 import endpoints.backend.form.ProfileForm;
 import endpoints.backend.form.ProfileForm.TeeShirtSize;
+import endpoints.backend.service.ChangeFeedService;
+import endpoints.backend.service.ConferenceCache;
+import endpoints.backend.service.FacetCounterService;
+import endpoints.backend.service.FacetCounterService.FacetCount;
+import endpoints.backend.service.SearchIndexService;
+import endpoints.backend.service.SeatCounterService;
+import endpoints.backend.service.UserIdService;
 
 import static endpoints.backend.service.OfyService.factory;
 import static endpoints.backend.service.OfyService.ofy;
@@ -29,8 +69,59 @@ import static endpoints.backend.service.OfyService.ofy;
     version = "v1",
     scopes = {Constants.EMAIL_SCOPE},
     clientIds = {Constants.WEB_CLIENT_ID, Constants.ANDROID_CLIENT_ID, Constants.API_EXPLORER_CLIENT_ID },
-    description = "API for the Conference Central Backend application.")
+    description = "API for the Conference Central Backend application.",
+    namespace = @ApiNamespace(ownerDomain = "backend.endpoints", ownerName = "backend.endpoints", packagePath = ""))
 public class ConferenceApi {
+    private static final Logger LOG = Logger.getLogger(ConferenceApi.class.getName());
+
+    /** Number of conferences returned per page when the client does not ask for a page size. */
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    /** Upper bound for the page size, so that a single request can not read the whole kind. */
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /** Maximum number of conferences in a single import, a request has to finish within its deadline. */
+    private static final int MAX_IMPORT_SIZE = 1000;
+
+    /** Maximum number of entities the datastore accepts in a single put. */
+    private static final int MAX_ENTITIES_PER_PUT = 500;
+
+    /** Maximum number of import batches being written at the same time. */
+    private static final int MAX_PUTS_IN_FLIGHT = 4;
+
+    /** Maximum number of conferences in a single batch registration. */
+    private static final int MAX_BATCH_SIZE = 50;
+
+    /**
+     * Maximum number of shards a batch registration tries per conference. Every shard tried is an
+     * entity group of the transaction, next to the profile and the change record, and a
+     * cross-group transaction is limited to 25 entity groups.
+     */
+    private static final int BATCH_SHARD_ATTEMPTS = 2;
+
+    /** Number of conferences registered in a single transaction of a batch registration. */
+    private static final int CONFERENCES_PER_TRANSACTION = (25 - 2) / BATCH_SHARD_ATTEMPTS;
+
+    /** Length of the window of getUpcomingConferences when the client does not give its end. */
+    private static final int DEFAULT_UPCOMING_DAYS = 7;
+
+    /** Maximum length of the window of getUpcomingConferences, an IN filter is limited to 30 values. */
+    private static final int MAX_UPCOMING_DAYS = 180;
+
+    /**
+     * A conference saved this long before a sync may still be committing, so the watermark
+     * handed out stays this far behind and the next sync reads such conferences again.
+     */
+    private static final long SYNC_SETTLE_MILLIS = 10 * 1000;
+
+    /** Indexed properties of Conference read by the projection queries for ConferenceSummary. */
+    private static final List<String> SUMMARY_PROPERTIES = Arrays.asList(
+            "name", "city", "startDate", "endDate", "maxAttendees", "seatsAvailable");
+
+    private static final String ALREADY_REGISTERED = "You have already registered for this conference";
+    private static final String NOT_REGISTERED = "You are not registered for this conference";
+    private static final String NO_SEATS_AVAILABLE = "There are no seats available.";
+    private static final String SEATS_NOT_RETURNED = "The seats could not be given back to the conference.";
 
     /*
      * Get the display name from the user's email. For example, if the email is
@@ -64,25 +155,36 @@ public class ConferenceApi {
         }
 
         // 2 Get the userId and mainEmail
-        String mainEmail = user.getEmail();
-        String userId = getUserId(user);
+        final String mainEmail = user.getEmail();
+        final String userId = getUserId(user);
         // Get displayname and teeshrit size sent by the request
-        String displayName = profileForm.getDisplayName();
-        TeeShirtSize teeShirtSize = profileForm.getTeeShirtSize();
-
-        // Get the profile from datastore if it exist, create otherwise
-        Profile profile = ofy().load().key(Key.create(Profile.class, userId)).now();
-        if(profile == null){
-            if(displayName == null) displayName = extractDefaultDisplayNameFromEmail(user.getEmail());
-            if(teeShirtSize == null) teeShirtSize = TeeShirtSize.NOT_SPECIFIED;
-            profile = new Profile(userId, displayName, mainEmail, teeShirtSize);
-        }else { //profile entity already exist, update it
-            profile.update(displayName, teeShirtSize);
-        }
+        final String displayName = profileForm.getDisplayName();
+        final TeeShirtSize teeShirtSize = profileForm.getTeeShirtSize();
 
         // 3 (In Lesson 3)
-        // Save the Profile entity in the datastore
-        ofy().save().entity(profile).now();
+        // The profile is read in the transaction which saves it, together with its change record,
+        // so a registration committed meanwhile is not overwritten with the conferences read before
+        Profile profile = ofy().transact(new Work<Profile>() {
+            @Override
+            public Profile run() {
+                // Get the profile from datastore if it exist, create otherwise
+                Profile profile = ofy().load().key(Key.create(Profile.class, userId)).now();
+                if(profile == null){
+                    profile = new Profile(userId,
+                            displayName == null ? extractDefaultDisplayNameFromEmail(mainEmail) : displayName,
+                            mainEmail, teeShirtSize == null ? TeeShirtSize.NOT_SPECIFIED : teeShirtSize);
+                }else { //profile entity already exist, update it
+                    profile.update(displayName, teeShirtSize);
+                }
+                ofy().save().entity(profile);
+                ChangeFeedService.append(Collections.<String>emptyList(), userId);
+                return profile;
+            }
+        });
+        if(displayName != null){
+            // The cached conferences of the user hold the organizer's display name
+            ConferenceCache.invalidateOrganizer(Key.create(Profile.class, userId));
+        }
         // Return the profile
         return profile;
     }
@@ -91,12 +193,18 @@ public class ConferenceApi {
      * Returns a Profile object associated with the given user object. The cloud
      * endpoints system automatically inject the User object.
      *
+     * The profile is read from the global cache. A client polling for changes passes the etag of
+     * its copy and gets an empty response while the profile has not changed, without the profile
+     * being serialized again.
+     *
      * @param user A User object injected by the cloud endpoints.
-     * @return Profile object.
+     * @param etag The etag of the profile the client has, null to always get the profile.
+     * @return Profile object, null when there is none or when it still has the given etag.
      * @throws UnauthorizedException when the User object is null.
      */
     @ApiMethod(name = "getProfile", path = "profile", httpMethod = HttpMethod.GET)
-    public Profile getProfile(final User user) throws UnauthorizedException {
+    public Profile getProfile(final User user, @Named("etag") @Nullable final String etag)
+            throws UnauthorizedException {
         if (user == null) {
             throw new UnauthorizedException("Authorization required");
         }
@@ -105,12 +213,19 @@ public class ConferenceApi {
         String userId = getUserId(user);
         Key key = Key.create(Profile.class, userId);
         Profile profile = (Profile) ofy().load().key(key).now();
+        if (profile != null && profile.getEtag().equals(etag)) {
+            return null;
+        }
         return profile;
     }
 
     /**
      * Creates a new Conference object and stores it in the datastore
      *
+     * The ID allocation and the Profile load run concurrently, and the Conference, its seat
+     * shards, its search postings, a new Profile, its facet counts and its change record are written in a single
+     * cross-group transaction.
+     *
      * @param user An user who invokes this method, null when the user is not signed in.
      * @param conferenceForm A ConferenceForm object representing user's input.
      * @return A newly created Conference object.
@@ -122,38 +237,835 @@ public class ConferenceApi {
         if(user == null){
             throw new UnauthorizedException("Authorization Required!");
         }
+        final long startTime = System.nanoTime();
 
         // (Lesson 4)
         // Get the userId of the logged in User
-        String userId = getUserId(user);
+        final String userId = getUserId(user);
+        final long userIdTime = System.nanoTime();
 
         // (Lesson 4)
         // Get the key for the User's Profile
-        Key<Profile> profileKey = Key.create(Profile.class, userId);
+        final Key<Profile> profileKey = Key.create(Profile.class, userId);
 
         // (Lesson 4)
         // Allocate a key for the conference -- let App Engine allocate the ID
         // Dont forget the include parent Profile in the allocated ID
-        final Key<Conference> conferenceKey = factory().allocateId(profileKey, Conference.class);
+        // The allocation runs in the background and is not part of the transaction below,
+        // so a retried transaction reuses the same ID
+        final Future<KeyRange> conferenceIdRange = DatastoreServiceFactory.getAsyncDatastoreService()
+                .allocateIds(profileKey.getRaw(), Key.getKind(Conference.class), 1);
 
-        // (Lesson 4)
-        // Get the Conference Id from the Key
-        final long conferenceId = conferenceKey.getId();
+        final long[] stageTimes = new long[2];
+        Conference conference = ofy().transact(new Work<Conference>() {
+            @Override
+            public Conference run() {
+                // (Lesson 4)
+                // Get the existing Profile entity for the current user if there is one
+                // The load is started now and runs while the ID allocation is being waited for
+                LoadResult<Profile> profileResult = ofy().load().key(profileKey);
 
-        // (Lesson 4)
-        // Get the existing Profile entity for the current user if there is one
-        // otherwise create a new Profile entity with the default values
-        Profile profile= getProfileFromUser(user);
+                // (Lesson 4)
+                // Get the Conference Id from the Key
+                long conferenceId = getAllocatedId(conferenceIdRange);
+                stageTimes[0] = System.nanoTime();
 
-        // (Lesson 4)
-        // Create a new Conference Entity, specifying the user's profile entity
-        // as the parent of the conference
-        Conference conference = new Conference(conferenceId, userId, conferenceForm);
+                // otherwise create a new Profile entity with the default values
+                Profile profile = profileResult.now();
+                boolean newProfile = profile == null;
+                if(newProfile){
+                    String email = user.getEmail();
+                    profile = new Profile(userId, extractDefaultDisplayNameFromEmail(email),
+                            email, TeeShirtSize.NOT_SPECIFIED);
+                }
+                stageTimes[1] = System.nanoTime();
 
-        // (Lesson 4)
-        // Save Conference and Profile entities
-        ofy().save().entities(conference, profile).now();
+                // (Lesson 4)
+                // Create a new Conference Entity, specifying the user's profile entity
+                // as the parent of the conference
+                Conference conference = new Conference(conferenceId, userId, conferenceForm);
+
+                // Spread the seats over the shards, which are saved along with the conference
+                List<Object> entities = new ArrayList<Object>(SeatCounterService.createShards(conference));
+
+                // The search postings are in the entity group of the conference
+                entities.addAll(SearchIndexService.createPostings(conference));
+
+                // (Lesson 4)
+                // Save Conference and Profile entities, the Profile only when it is new
+                // No need to wait for the save here, the commit completes it
+                entities.add(conference);
+                if(newProfile){
+                    entities.add(profile);
+                }
+                ofy().save().entities(entities);
+
+                // Counted on a facet shard within the same transaction
+                FacetCounterService.conferenceChanged(null, conference);
+                ChangeFeedService.appendConference(conference.getWebsafeKey(), newProfile ? userId : null);
+
+                conference.attachOrganizer(profile);
+                return conference;
+            }
+        });
+        final long commitTime = System.nanoTime();
+
+        ConferenceCache.invalidate(conference);
+        FacetCounterService.facetsChanged();
+        if(LOG.isLoggable(Level.FINE)){
+            LOG.fine(String.format("createConference stages (ms): userId=%.1f allocateId=%.1f profile=%.1f"
+                            + " saveAndCommit=%.1f total=%.1f",
+                    (userIdTime - startTime) / 1e6, (stageTimes[0] - userIdTime) / 1e6,
+                    (stageTimes[1] - stageTimes[0]) / 1e6, (commitTime - stageTimes[1]) / 1e6,
+                    (commitTime - startTime) / 1e6));
+        }
+        return conference;
+    }
+
+    /**
+     * Creates the change record of a batch of imported conferences.
+     *
+     * @param conferences The imported conferences by row.
+     * @param rows The rows of the conferences in the batch.
+     * @param profileUserId The userId of the profile saved with the batch, null when there is none.
+     * @return The change record, to be saved with the batch.
+     */
+    private static ChangeRecord newImportRecord(Conference[] conferences, List<Integer> rows, String profileUserId) {
+        List<String> websafeConferenceKeys = new ArrayList<>(rows.size());
+        for (int row : rows) {
+            websafeConferenceKeys.add(conferences[row].getWebsafeKey());
+        }
+        return ChangeFeedService.newRecord(websafeConferenceKeys, profileUserId);
+    }
+
+    /**
+     * Waits for an ID allocated asynchronously.
+     *
+     * @param idRange The result of allocating a single ID.
+     * @return The allocated ID.
+     */
+    private static long getAllocatedId(Future<KeyRange> idRange) {
+        try {
+            return idRange.get().getStart().getId();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Could not allocate an ID for the conference", e);
+        }
+    }
+
+    /**
+     * The outcome of importing a single row of a ConferenceImportForm.
+     */
+    public static class ImportOutcome {
+        private final int row;
+        private final String websafeConferenceKey;
+        private final Boolean result;
+        private final String reason;
+
+        public ImportOutcome(int row, String websafeConferenceKey, Boolean result, String reason) {
+            this.row = row;
+            this.websafeConferenceKey = websafeConferenceKey;
+            this.result = result;
+            this.reason = reason;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getWebsafeConferenceKey() {
+            return websafeConferenceKey;
+        }
+
+        public Boolean getResult() {
+            return result;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * Creates all the Conferences of the given form, organized by the user.
+     *
+     * The IDs of all the rows are allocated as a single range. Every row is validated with the
+     * same rules as createConference. A valid conference is written with its seat shards and its
+     * search postings, up to 211 entities, and a batch holds as many whole conferences as fit in
+     * MAX_ENTITIES_PER_PUT entities together with the change record of the batch. At most
+     * MAX_PUTS_IN_FLIGHT batches are written at a time. The facets of all the imported conferences
+     * are counted afterwards with a single write.
+     *
+     * The writes are not transactional. When a batch fails, its entities are read back, the rows
+     * which were written completely succeed and the other rows fail and their partial writes are
+     * deleted, so that they can simply be imported again.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param conferenceImportForm The conferences to create.
+     * @return The outcome for every row, in the order of the rows.
+     * @throws UnauthorizedException when the user is not signed in.
+     * @throws BadRequestException when there are no rows or too many of them.
+     */
+    @ApiMethod(name = "importConferences", path = "conferences/import", httpMethod = HttpMethod.POST)
+    public List<ImportOutcome> importConferences(final User user, final ConferenceImportForm conferenceImportForm)
+            throws UnauthorizedException, BadRequestException {
+        if(user == null){
+            throw new UnauthorizedException("Authorization Required!");
+        }
+        List<ConferenceForm> conferenceForms = conferenceImportForm == null ? null
+                : conferenceImportForm.getConferences();
+        if(conferenceForms == null || conferenceForms.isEmpty()){
+            throw new BadRequestException("There are no conferences to import.");
+        }
+        if(conferenceForms.size() > MAX_IMPORT_SIZE){
+            throw new BadRequestException("At most " + MAX_IMPORT_SIZE + " conferences can be imported at once, but "
+                    + conferenceForms.size() + " were given.");
+        }
+
+        String userId = getUserId(user);
+        Key<Profile> profileKey = Key.create(Profile.class, userId);
+        LoadResult<Profile> profileResult = ofy().load().key(profileKey);
+        Iterator<Key<Conference>> conferenceKeys =
+                factory().allocateIds(profileKey, Conference.class, conferenceForms.size()).iterator();
+
+        ImportOutcome[] outcomes = new ImportOutcome[conferenceForms.size()];
+        Conference[] conferences = new Conference[conferenceForms.size()];
+        Map<Integer, List<Object>> rowEntities = new LinkedHashMap<>();
+        List<List<Object>> batches = new ArrayList<>();
+        List<List<Integer>> batchRows = new ArrayList<>();
+        List<Object> batch = new ArrayList<>();
+        List<Integer> rows = new ArrayList<>();
+
+        // A new organizer gets the default profile, written with the first batch
+        Profile profile = profileResult.now();
+        String batchProfileUserId = null;
+        if(profile == null){
+            String email = user.getEmail();
+            profile = new Profile(userId, extractDefaultDisplayNameFromEmail(email),
+                    email, TeeShirtSize.NOT_SPECIFIED);
+            batch.add(profile);
+            batchProfileUserId = userId;
+        }
+
+        for (int row = 0; row < conferenceForms.size(); row++) {
+            long conferenceId = conferenceKeys.next().getId();
+            Conference conference;
+            try {
+                conference = new Conference(conferenceId, userId, conferenceForms.get(row));
+            } catch (NullPointerException | IllegalArgumentException e) {
+                String reason = e.getMessage() == null ? "Invalid conference form" : e.getMessage();
+                outcomes[row] = new ImportOutcome(row, null, false, reason);
+                continue;
+            }
+
+            // A conference, its shards and its search postings always go into the same batch
+            List<Object> entities = new ArrayList<Object>(SeatCounterService.createShards(conference));
+            entities.addAll(SearchIndexService.createPostings(conference));
+            entities.add(conference);
+            // One entity of every batch is its change record
+            if(batch.size() + entities.size() + 1 > MAX_ENTITIES_PER_PUT){
+                batch.add(newImportRecord(conferences, rows, batchProfileUserId));
+                batches.add(batch);
+                batchRows.add(rows);
+                batch = new ArrayList<>();
+                rows = new ArrayList<>();
+                batchProfileUserId = null;
+            }
+            batch.addAll(entities);
+            rows.add(row);
+            rowEntities.put(row, entities);
+            conferences[row] = conference;
+            outcomes[row] = new ImportOutcome(row, conference.getWebsafeKey(), true, "");
+        }
+        if(!batch.isEmpty()){
+            batch.add(newImportRecord(conferences, rows, batchProfileUserId));
+            batches.add(batch);
+            batchRows.add(rows);
+        }
+
+        // The oldest batch in flight is waited for before the next one is sent
+        List<Result<?>> results = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            if(i >= MAX_PUTS_IN_FLIGHT){
+                int done = i - MAX_PUTS_IN_FLIGHT;
+                awaitImportBatch(results.get(done), batches.get(done), batchRows.get(done), rowEntities, outcomes);
+            }
+            results.add(ofy().save().entities(batches.get(i)));
+        }
+        for (int i = Math.max(0, batches.size() - MAX_PUTS_IN_FLIGHT); i < batches.size(); i++) {
+            awaitImportBatch(results.get(i), batches.get(i), batchRows.get(i), rowEntities, outcomes);
+        }
+
+        // The imported conferences are counted with a single facet write
+        List<Conference> imported = new ArrayList<>(conferences.length);
+        for (int row = 0; row < conferences.length; row++) {
+            if(conferences[row] != null && outcomes[row].getResult()){
+                imported.add(conferences[row]);
+            }
+        }
+        try {
+            FacetCounterService.conferencesCreated(imported);
+            FacetCounterService.facetsChanged();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not count the facets of the imported conferences", e);
+        }
+
+        ConferenceCache.invalidatePages();
+        return Arrays.asList(outcomes);
+    }
+
+    /**
+     * Waits for the put of an import batch. When it fails, the entities of the batch are read back
+     * and only the rows which were not written completely fail, their partial writes are deleted.
+     * The profile and the change record of the batch are written again when they are missing.
+     *
+     * @param result The result of the put.
+     * @param batch The entities of the batch.
+     * @param rows The rows of the conferences in the batch.
+     * @param rowEntities The entities of every valid row.
+     * @param outcomes The outcomes by row, updated for the failed rows.
+     */
+    private static void awaitImportBatch(Result<?> result, List<Object> batch, List<Integer> rows,
+            Map<Integer, List<Object>> rowEntities, ImportOutcome[] outcomes) {
+        try {
+            result.now();
+            return;
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not import a batch of conferences", e);
+        }
+
+        Set<Key<Object>> written;
+        try {
+            List<Key<Object>> keys = new ArrayList<>(batch.size());
+            for (Object entity : batch) {
+                keys.add(Key.create(entity));
+            }
+            written = ofy().load().keys(keys).keySet();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not check a failed batch of conferences", e);
+            written = Collections.emptySet();
+        }
+
+        Set<Object> rowEntitySet = new HashSet<>();
+        List<Key<Object>> partial = new ArrayList<>();
+        for (int row : rows) {
+            List<Object> entities = rowEntities.get(row);
+            rowEntitySet.addAll(entities);
+            List<Key<Object>> keys = new ArrayList<>(entities.size());
+            for (Object entity : entities) {
+                keys.add(Key.create(entity));
+            }
+            if(!written.containsAll(keys)){
+                keys.retainAll(written);
+                partial.addAll(keys);
+                outcomes[row] = new ImportOutcome(row, null, false, "Could not save the conference");
+            }
+        }
+
+        // The profile and the change record are not part of any row
+        List<Object> missing = new ArrayList<>();
+        for (Object entity : batch) {
+            if(!rowEntitySet.contains(entity) && !written.contains(Key.create(entity))){
+                missing.add(entity);
+            }
+        }
+        try {
+            if(!partial.isEmpty()){
+                ofy().delete().keys(partial).now();
+            }
+            if(!missing.isEmpty()){
+                ofy().save().entities(missing).now();
+            }
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not repair a failed batch of conferences", e);
+        }
+    }
+
+    /**
+     * Returns the number of conferences per city, per topic and per start month, so that the
+     * filters of the conference list can show how many conferences match each value.
+     *
+     * @return The counts of all the values having at least one conference, ordered by field and
+     *         then by descending count.
+     */
+    @ApiMethod(name = "getConferenceFacets", path = "conferences/facets", httpMethod = HttpMethod.GET)
+    public List<FacetCount> getConferenceFacets() {
+        return FacetCounterService.getFacets();
+    }
+
+    /**
+     * Returns a Conference object with the given conferenceId.
+     *
+     * The conference and its seats are read from memcache. A client polling for changes passes the
+     * etag of its copy and gets an empty response while neither the conference nor its seats have
+     * changed, without the conference being serialized again.
+     *
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @param etag The etag of the conference the client has, null to always get the conference.
+     * @return a Conference object with the given conferenceId, null when it still has the given etag.
+     * @throws NotFoundException when there is no Conference with the given conferenceId.
+     */
+    @ApiMethod(name = "getConference", path = "conference/{websafeConferenceKey}", httpMethod = HttpMethod.GET)
+    public Conference getConference(@Named("websafeConferenceKey") final String websafeConferenceKey,
+            @Named("etag") @Nullable final String etag) throws NotFoundException {
+        Conference conference;
+        try {
+            conference = ConferenceCache.getConference(websafeConferenceKey);
+        } catch (IllegalArgumentException e) {
+            // Not a valid websafe key, so there can not be such a conference
+            conference = null;
+        }
+        if(conference == null){
+            throw new NotFoundException("No Conference found with key: " + websafeConferenceKey);
+        }
+        SeatCounterService.attachSeatsAvailable(Collections.singletonList(conference));
+        if(conference.getEtag().equals(etag)){
+            return null;
+        }
+        return conference;
+    }
+
+    /**
+     * Returns a page of the Conferences created by the user, ordered by name.
+     *
+     * The user's conferences are children of the user's Profile, so they are read with an
+     * ancestor query: a strongly consistent range read of this entity group only.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param pageSize The number of conferences to return, DEFAULT_PAGE_SIZE when null.
+     * @param cursor The nextPageToken of the previous page, null for the first page.
+     * @return a page of Conferences that the user created, with the token for the next page.
+     * @throws UnauthorizedException when the user is not signed in.
+     * @throws BadRequestException when the pageSize or the cursor is invalid.
+     */
+    @ApiMethod(name = "getConferencesCreated", path = "getConferencesCreated", httpMethod = HttpMethod.POST)
+    public CollectionResponse<Conference> getConferencesCreated(final User user,
+            @Named("pageSize") @Nullable Integer pageSize, @Named("cursor") @Nullable String cursor)
+            throws UnauthorizedException, BadRequestException {
+        if(user == null){
+            throw new UnauthorizedException("Authorization required");
+        }
+        Key<Profile> profileKey = Key.create(Profile.class, getUserId(user));
+        Query<Conference> query = ofy().load().type(Conference.class).ancestor(profileKey).order("name");
+
+        CollectionResponse<Conference> page = fetchPage(query, pageSize, cursor);
+        // All of them have the same organizer, so this is a single load
+        resolveOrganizers(page.getItems());
+        SeatCounterService.attachSeatsAvailable(page.getItems());
+        return page;
+    }
+
+    /**
+     * Returns the Conferences that the user has registered to attend, in a single response.
+     *
+     * The conferences are resolved from the keys stored in the user's profile with one batch get.
+     * The organizers' profiles are the parents of the conferences, so their keys are known from
+     * the conference keys and they are loaded concurrently with the conferences.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @return a list of Conferences that the user has registered to attend.
+     * @throws UnauthorizedException when the user is not signed in.
+     * @throws NotFoundException when the user does not have a profile.
+     */
+    @ApiMethod(name = "getConferencesToAttend", path = "getConferencesToAttend", httpMethod = HttpMethod.GET)
+    public List<Conference> getConferencesToAttend(final User user)
+            throws UnauthorizedException, NotFoundException {
+        if(user == null){
+            throw new UnauthorizedException("Authorization required");
+        }
+        Profile profile = ofy().load().key(Key.create(Profile.class, getUserId(user))).now();
+        if(profile == null){
+            throw new NotFoundException("Profile doesn't exist.");
+        }
+
+        List<Key<Conference>> conferenceKeys = new ArrayList<>();
+        Set<Key<Profile>> organizerKeys = new HashSet<>();
+        for (String websafeConferenceKey : profile.getConferenceKeysToAttend()) {
+            Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+            conferenceKeys.add(conferenceKey);
+            organizerKeys.add(conferenceKey.<Profile>getParent());
+        }
+        Map<Key<Conference>, Conference> conferences = ofy().load().keys(conferenceKeys);
+        Map<Key<Profile>, Profile> organizers = ofy().load().keys(organizerKeys);
+
+        List<Conference> result = new ArrayList<>(conferenceKeys.size());
+        for (Key<Conference> conferenceKey : conferenceKeys) {
+            Conference conference = conferences.get(conferenceKey);
+            // The conference may have been deleted since the user registered
+            if(conference != null){
+                conference.attachOrganizer(organizers.get(conference.getProfileKey()));
+                result.add(conference);
+            }
+        }
+        SeatCounterService.attachSeatsAvailable(result);
+        return result;
+    }
+
+    /**
+     * Just a wrapper for Boolean.
+     * We need this wrapped Boolean because endpoints functions must return
+     * an object instance, they can't return a Type class such as
+     * String or Integer or Boolean
+     */
+    public static class WrappedBoolean {
+        private final Boolean result;
+        private final String reason;
+
+        public WrappedBoolean(Boolean result) {
+            this(result, "");
+        }
+
+        public WrappedBoolean(Boolean result, String reason) {
+            this.result = result;
+            this.reason = reason;
+        }
+
+        public Boolean getResult() {
+            return result;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * Registers to the specified Conference.
+     *
+     * The seat is booked on one of the conference's SeatShards in the same transaction that
+     * adds the conference to the user's profile, so concurrent registrations for the same
+     * conference do not contend for a single entity group and can not overbook it.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @return Boolean true when success, otherwise false
+     * @throws UnauthorizedException when the user is not signed in.
+     * @throws NotFoundException when there is no Conference with the given conferenceId.
+     * @throws ConflictException when the user has already registered or there are no seats left.
+     */
+    @ApiMethod(name = "registerForConference", path = "conference/{websafeConferenceKey}/registration",
+            httpMethod = HttpMethod.POST)
+    public WrappedBoolean registerForConference(final User user,
+            @Named("websafeConferenceKey") final String websafeConferenceKey)
+            throws UnauthorizedException, NotFoundException, ConflictException {
+        if(user == null){
+            throw new UnauthorizedException("Authorization required");
+        }
+        final String userId = getUserId(user);
+        final Conference conference = loadConference(websafeConferenceKey);
+
+        WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
+            @Override
+            public WrappedBoolean run() {
+                Profile profile = getProfileFromUser(user, userId);
+                if(profile.getConferenceKeysToAttend().contains(websafeConferenceKey)){
+                    return new WrappedBoolean(false, ALREADY_REGISTERED);
+                }
+                // Recorded before the seat shards are touched, a failed record retries the transaction
+                ChangeFeedService.appendConference(websafeConferenceKey, userId);
+                if(!SeatCounterService.bookSeats(conference, 1)){
+                    return new WrappedBoolean(false, NO_SEATS_AVAILABLE);
+                }
+                profile.addToConferenceKeysToAttend(websafeConferenceKey);
+                ofy().save().entity(profile).now();
+                return new WrappedBoolean(true);
+            }
+        });
+
+        if(!result.getResult()){
+            throw new ConflictException(result.getReason());
+        }
+        SeatCounterService.seatsChanged(conference, -1);
+        return result;
+    }
+
+    /**
+     * Unregister from the specified Conference.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param websafeConferenceKey The String representation of the Conference Key to unregister from.
+     * @return Boolean true when success, otherwise false.
+     * @throws UnauthorizedException when the user is not signed in.
+     * @throws NotFoundException when there is no Conference with the given conferenceId
+     *         or the user has not registered for it.
+     * @throws ConflictException when the seat can not be given back to the conference.
+     */
+    @ApiMethod(name = "unregisterFromConference", path = "conference/{websafeConferenceKey}/registration",
+            httpMethod = HttpMethod.DELETE)
+    public WrappedBoolean unregisterFromConference(final User user,
+            @Named("websafeConferenceKey") final String websafeConferenceKey)
+            throws UnauthorizedException, NotFoundException, ConflictException {
+        if(user == null){
+            throw new UnauthorizedException("Authorization required");
+        }
+        final String userId = getUserId(user);
+        final Conference conference = loadConference(websafeConferenceKey);
+
+        WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
+            @Override
+            public WrappedBoolean run() {
+                Profile profile = getProfileFromUser(user, userId);
+                if(!profile.getConferenceKeysToAttend().contains(websafeConferenceKey)){
+                    return new WrappedBoolean(false, NOT_REGISTERED);
+                }
+                // Recorded before the seat shards are touched, a failed record retries the transaction
+                ChangeFeedService.appendConference(websafeConferenceKey, userId);
+                if(!SeatCounterService.giveBackSeats(conference, 1)){
+                    return new WrappedBoolean(false, SEATS_NOT_RETURNED);
+                }
+                profile.unregisterFromConference(websafeConferenceKey);
+                ofy().save().entity(profile).now();
+                return new WrappedBoolean(true);
+            }
+        });
+
+        if(!result.getResult()){
+            if(NOT_REGISTERED.equals(result.getReason())){
+                throw new NotFoundException(result.getReason());
+            }
+            throw new ConflictException(result.getReason());
+        }
+        SeatCounterService.seatsChanged(conference, 1);
+        return result;
+    }
+
+    /**
+     * The outcome of registering to or unregistering from a single conference in a batch.
+     */
+    public static class RegistrationOutcome {
+        private final String websafeConferenceKey;
+        private final Boolean result;
+        private final String reason;
+
+        public RegistrationOutcome(String websafeConferenceKey, Boolean result, String reason) {
+            this.websafeConferenceKey = websafeConferenceKey;
+            this.result = result;
+            this.reason = reason;
+        }
+
+        public String getWebsafeConferenceKey() {
+            return websafeConferenceKey;
+        }
+
+        public Boolean getResult() {
+            return result;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * Registers to all the specified Conferences in a single call.
+     *
+     * The conferences are loaded with a single batch get. They are then registered in chunks of
+     * CONFERENCES_PER_TRANSACTION, each chunk in one cross-group transaction which books the seats
+     * on the shards and adds the conferences to the profile, so a seat is taken if and only if the
+     * profile lists the conference. A conference is reported without seats when the shards it
+     * tried have been emptied, even if another shard still has a seat left.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param websafeConferenceKeys The String representations of the Conference Keys.
+     * @return The outcome for every conference, in the order of the given keys.
+     * @throws UnauthorizedException when the user is not signed in.
+     * @throws BadRequestException when too many conferences are given.
+     */
+    @ApiMethod(name = "registerForConferences", path = "conferences/registration", httpMethod = HttpMethod.POST)
+    public List<RegistrationOutcome> registerForConferences(final User user,
+            @Named("websafeConferenceKeys") final List<String> websafeConferenceKeys)
+            throws UnauthorizedException, BadRequestException {
+        if(user == null){
+            throw new UnauthorizedException("Authorization required");
+        }
+        final String userId = getUserId(user);
+        Map<String, RegistrationOutcome> outcomes = new LinkedHashMap<>();
+        final Map<String, Conference> conferences = loadBatchConferences(websafeConferenceKeys, outcomes);
+
+        List<String> candidates = new ArrayList<>(conferences.keySet());
+        for (int from = 0; from < candidates.size(); from += CONFERENCES_PER_TRANSACTION) {
+            final List<String> chunk = candidates.subList(from,
+                    Math.min(from + CONFERENCES_PER_TRANSACTION, candidates.size()));
+            Map<String, String> reasons = ofy().transact(new Work<Map<String, String>>() {
+                @Override
+                public Map<String, String> run() {
+                    Profile profile = getProfileFromUser(user, userId);
+                    Map<String, String> reasons = new LinkedHashMap<>();
+                    List<String> registered = new ArrayList<>();
+                    for (String websafeConferenceKey : chunk) {
+                        if(profile.getConferenceKeysToAttend().contains(websafeConferenceKey)){
+                            reasons.put(websafeConferenceKey, ALREADY_REGISTERED);
+                        } else if(!SeatCounterService.bookSeats(conferences.get(websafeConferenceKey), 1,
+                                BATCH_SHARD_ATTEMPTS)){
+                            reasons.put(websafeConferenceKey, NO_SEATS_AVAILABLE);
+                        } else {
+                            profile.addToConferenceKeysToAttend(websafeConferenceKey);
+                            registered.add(websafeConferenceKey);
+                            reasons.put(websafeConferenceKey, "");
+                        }
+                    }
+                    if(!registered.isEmpty()){
+                        ofy().save().entity(profile).now();
+                        ChangeFeedService.append(registered, userId);
+                    }
+                    return reasons;
+                }
+            });
+
+            for (Map.Entry<String, String> reason : reasons.entrySet()) {
+                String websafeConferenceKey = reason.getKey();
+                boolean registered = reason.getValue().isEmpty();
+                if(registered){
+                    SeatCounterService.seatsChanged(conferences.get(websafeConferenceKey), -1);
+                }
+                outcomes.put(websafeConferenceKey,
+                        new RegistrationOutcome(websafeConferenceKey, registered, reason.getValue()));
+            }
+        }
+        return new ArrayList<>(outcomes.values());
+    }
+
+    /**
+     * Unregisters from all the specified Conferences in a single call.
+     *
+     * The conferences are unregistered in chunks of CONFERENCES_PER_TRANSACTION, each chunk in one
+     * cross-group transaction which removes the conferences from the profile and gives their
+     * seats back to the shards.
+     *
+     * @param user An user who invokes this method, null when the user is not signed in.
+     * @param websafeConferenceKeys The String representations of the Conference Keys.
+     * @return The outcome for every conference, in the order of the given keys.
+     * @throws UnauthorizedException when the user is not signed in.
+     * @throws BadRequestException when too many conferences are given.
+     */
+    @ApiMethod(name = "unregisterFromConferences", path = "conferences/registration",
+            httpMethod = HttpMethod.DELETE)
+    public List<RegistrationOutcome> unregisterFromConferences(final User user,
+            @Named("websafeConferenceKeys") final List<String> websafeConferenceKeys)
+            throws UnauthorizedException, BadRequestException {
+        if(user == null){
+            throw new UnauthorizedException("Authorization required");
+        }
+        final String userId = getUserId(user);
+        Map<String, RegistrationOutcome> outcomes = new LinkedHashMap<>();
+        final Map<String, Conference> conferences = loadBatchConferences(websafeConferenceKeys, outcomes);
+
+        List<String> candidates = new ArrayList<>(conferences.keySet());
+        for (int from = 0; from < candidates.size(); from += CONFERENCES_PER_TRANSACTION) {
+            final List<String> chunk = candidates.subList(from,
+                    Math.min(from + CONFERENCES_PER_TRANSACTION, candidates.size()));
+            Map<String, String> reasons = ofy().transact(new Work<Map<String, String>>() {
+                @Override
+                public Map<String, String> run() {
+                    Profile profile = getProfileFromUser(user, userId);
+                    Map<String, String> reasons = new LinkedHashMap<>();
+                    List<String> unregistered = new ArrayList<>();
+                    for (String websafeConferenceKey : chunk) {
+                        if(!profile.getConferenceKeysToAttend().contains(websafeConferenceKey)){
+                            reasons.put(websafeConferenceKey, NOT_REGISTERED);
+                        } else if(!SeatCounterService.giveBackSeats(conferences.get(websafeConferenceKey), 1,
+                                BATCH_SHARD_ATTEMPTS)){
+                            reasons.put(websafeConferenceKey, SEATS_NOT_RETURNED);
+                        } else {
+                            profile.unregisterFromConference(websafeConferenceKey);
+                            unregistered.add(websafeConferenceKey);
+                            reasons.put(websafeConferenceKey, "");
+                        }
+                    }
+                    if(!unregistered.isEmpty()){
+                        ofy().save().entity(profile).now();
+                        ChangeFeedService.append(unregistered, userId);
+                    }
+                    return reasons;
+                }
+            });
+
+            for (Map.Entry<String, String> reason : reasons.entrySet()) {
+                String websafeConferenceKey = reason.getKey();
+                boolean unregistered = reason.getValue().isEmpty();
+                if(unregistered){
+                    SeatCounterService.seatsChanged(conferences.get(websafeConferenceKey), 1);
+                }
+                outcomes.put(websafeConferenceKey,
+                        new RegistrationOutcome(websafeConferenceKey, unregistered, reason.getValue()));
+            }
+        }
+        return new ArrayList<>(outcomes.values());
+    }
+
+    /**
+     * Loads the conferences of a batch request with a single batch get. The keys which are invalid
+     * or have no conference get their outcome.
+     *
+     * @return The existing conferences by their websafe key, in the given order.
+     * @throws BadRequestException when there are more keys than MAX_BATCH_SIZE.
+     */
+    private static Map<String, Conference> loadBatchConferences(List<String> websafeConferenceKeys,
+            Map<String, RegistrationOutcome> outcomes) throws BadRequestException {
+        Map<String, Key<Conference>> conferenceKeys = parseConferenceKeys(websafeConferenceKeys, outcomes);
+        Map<Key<Conference>, Conference> loaded = ofy().load().keys(conferenceKeys.values());
+
+        Map<String, Conference> conferences = new LinkedHashMap<>();
+        for (Map.Entry<String, Key<Conference>> entry : conferenceKeys.entrySet()) {
+            Conference conference = loaded.get(entry.getValue());
+            if(conference == null){
+                outcomes.put(entry.getKey(), new RegistrationOutcome(entry.getKey(), false,
+                        "No Conference found with key: " + entry.getKey()));
+            } else {
+                conferences.put(entry.getKey(), conference);
+            }
+        }
+        return conferences;
+    }
 
+    /**
+     * Parses the websafe keys of a batch request, dropping duplicates.
+     * Every key gets a place in the outcomes, in the given order, and invalid keys get their outcome.
+     *
+     * @return The valid keys by their websafe representation.
+     * @throws BadRequestException when there are more keys than MAX_BATCH_SIZE.
+     */
+    private static Map<String, Key<Conference>> parseConferenceKeys(List<String> websafeConferenceKeys,
+            Map<String, RegistrationOutcome> outcomes) throws BadRequestException {
+        if(websafeConferenceKeys.size() > MAX_BATCH_SIZE){
+            throw new BadRequestException("At most " + MAX_BATCH_SIZE + " conferences can be given, but "
+                    + websafeConferenceKeys.size() + " were given.");
+        }
+        Map<String, Key<Conference>> conferenceKeys = new LinkedHashMap<>();
+        for (String websafeConferenceKey : websafeConferenceKeys) {
+            if(outcomes.containsKey(websafeConferenceKey)){
+                continue;
+            }
+            // Keeps the place of the key in the outcomes until the real outcome is known
+            outcomes.put(websafeConferenceKey, null);
+            try {
+                Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+                conferenceKeys.put(websafeConferenceKey, conferenceKey);
+            } catch (IllegalArgumentException e) {
+                outcomes.put(websafeConferenceKey, new RegistrationOutcome(websafeConferenceKey, false,
+                        "No Conference found with key: " + websafeConferenceKey));
+            }
+        }
+        return conferenceKeys;
+    }
+
+    /**
+     * Loads the conference with the given websafe key from the datastore.
+     *
+     * @param websafeConferenceKey The String representation of the Conference Key.
+     * @return The conference.
+     * @throws NotFoundException when there is no Conference with the given key.
+     */
+    private static Conference loadConference(String websafeConferenceKey) throws NotFoundException {
+        Conference conference = null;
+        try {
+            Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+            conference = ofy().load().key(conferenceKey).now();
+        } catch (IllegalArgumentException e) {
+            // Not a valid websafe key, so there can not be such a conference
+        }
+        if(conference == null){
+            throw new NotFoundException("No Conference found with key: " + websafeConferenceKey);
+        }
         return conference;
     }
 
@@ -164,11 +1076,24 @@ public class ConferenceApi {
      * @return user's profile
      */
     private static Profile getProfileFromUser(User user) {
+        return getProfileFromUser(user, getUserId(user));
+    }
+
+    /**
+     * Gets the Profile Entity for the current user or creates if its doesnt exist.
+     * Use this one when the userId is already known, resolving it again may cost a datastore
+     * write and read for Android clients.
+     *
+     * @param user
+     * @param userId the userId of the user
+     * @return user's profile
+     */
+    private static Profile getProfileFromUser(User user, String userId) {
         // First fetch the user's Profile from Datastore
-        Profile profile = ofy().load().key(Key.create(Profile.class, getUserId(user))).now();
+        Profile profile = ofy().load().key(Key.create(Profile.class, userId)).now();
         if(profile == null){ //create new profile with default values
             String email = user.getEmail();
-            profile = new Profile(getUserId(user),
+            profile = new Profile(userId,
                         extractDefaultDisplayNameFromEmail(email),
                         email, TeeShirtSize.NOT_SPECIFIED);
         }
@@ -177,23 +1102,14 @@ public class ConferenceApi {
 
     /**
      * This is a ugly workaround for null userId for Android clients,
-     * look AppEngineUser class for more explanation
+     * look AppEngineUser class for more explanation.
+     * The userIds resolved this way are cached by UserIdService.
      *
      * @param user A User object injected by the cloud endpoints
      * @return the App Engine userId for the user.
      */
     private static String getUserId(User user){
-        String userId = user.getUserId();
-        if(userId == null){//userId is null, so trying to obtain it from the datastore
-            AppEngineUser appEngineUser = new AppEngineUser(user);
-            ofy().save().entity(appEngineUser).now();
-            // Begin new session for not using session cache
-            Objectify objectify = ofy().factory().begin();
-            AppEngineUser savedUser = objectify.load().key(appEngineUser.getKey()).now();
-            userId = savedUser.getUser().getUserId();
-        }
-
-        return userId;
+        return UserIdService.getUserId(user);
     }
 
     /**
@@ -206,11 +1122,536 @@ public class ConferenceApi {
      * @return A list of conferences that match the query.
      */
     @ApiMethod(name = "queryConferences", path = "queryConferences", httpMethod = HttpMethod.POST)
-    public List<Conference> queryConferences(){
-        // Find all entities of type Conference
-        Query query = ofy().load().type(Conference.class).order("name");
-        return query.list();
+    public List<Conference> queryConferences(ConferenceQueryForm conferenceQueryForm)
+            throws BadRequestException {
+        // The filters are evaluated by the datastore, only the matching conferences are loaded
+        List<Conference> conferences = resolveOrganizers(planQuery(conferenceQueryForm).list());
+        SeatCounterService.attachSeatsAvailable(conferences);
+        return conferences;
+    }
+
+    /**
+     * Returns one page of the conferences matching the filters of the given form.
+     *
+     * The page is read with a datastore cursor, so only the requested conferences are loaded
+     * no matter how far the client has paged.
+     *
+     * @param conferenceQueryForm A form object representing the query.
+     * @param pageSize The number of conferences to return, DEFAULT_PAGE_SIZE when null.
+     * @param cursor The nextPageToken of the previous page, null for the first page.
+     * @return A page of conferences with the token for the next page, which is null on the last page.
+     * @throws BadRequestException when the filters, the pageSize or the cursor is invalid,
+     *         or when a filter uses the NE operator, which can not be paged.
+     */
+    @ApiMethod(name = "queryConferencesPage", path = "queryConferencesPage", httpMethod = HttpMethod.POST)
+    public CollectionResponse<Conference> queryConferencesPage(final ConferenceQueryForm conferenceQueryForm,
+            @Named("pageSize") @Nullable final Integer pageSize, @Named("cursor") @Nullable final String cursor)
+            throws BadRequestException {
+        ConferenceCache.Page page = loadConferencePage(conferenceQueryForm, pageSize, cursor);
+        return CollectionResponse.<Conference>builder()
+                .setItems(page.getItems())
+                .setNextPageToken(page.getNextPageToken())
+                .build();
+    }
+
+    /**
+     * Returns the same page of conferences as queryConferencesPage in a compact layout for mobile
+     * clients: one array per property instead of one object per conference, the cities, topics and
+     * organizers sent once per page, and the dates as milliseconds. See CompactConferenceList.
+     *
+     * @param conferenceQueryForm A form object representing the query.
+     * @param pageSize The number of conferences to return, DEFAULT_PAGE_SIZE when null.
+     * @param cursor The nextPageToken of the previous page, null for the first page.
+     * @return A page of conferences with the token for the next page, which is null on the last page.
+     * @throws BadRequestException when the filters, the pageSize or the cursor is invalid,
+     *         or when a filter uses the NE operator, which can not be paged.
+     */
+    @ApiMethod(name = "queryConferencesCompact", path = "queryConferencesCompact", httpMethod = HttpMethod.POST)
+    public CompactConferenceList queryConferencesCompact(final ConferenceQueryForm conferenceQueryForm,
+            @Named("pageSize") @Nullable final Integer pageSize, @Named("cursor") @Nullable final String cursor)
+            throws BadRequestException {
+        ConferenceCache.Page page = loadConferencePage(conferenceQueryForm, pageSize, cursor);
+        return new CompactConferenceList(page.getItems(), page.getNextPageToken());
+    }
+
+    /**
+     * Returns a page of the conferences matching the form, from ConferenceCache when it is cached,
+     * with the organizers and the current seats attached.
+     */
+    private static ConferenceCache.Page loadConferencePage(final ConferenceQueryForm conferenceQueryForm,
+            final Integer pageSize, final String cursor) throws BadRequestException {
+        String queryKey = conferenceQueryForm + "|" + pageSize + "|" + cursor;
+        ConferenceCache.Page page = ConferenceCache.getPage(queryKey,
+                new ConferenceCache.Loader<ConferenceCache.Page, BadRequestException>() {
+                    @Override
+                    public ConferenceCache.Page load() throws BadRequestException {
+                        CollectionResponse<Conference> response =
+                                fetchPage(planPagedQuery(conferenceQueryForm), pageSize, cursor);
+                        return new ConferenceCache.Page(resolveOrganizers(response.getItems()),
+                                response.getNextPageToken());
+                    }
+                });
+
+        // The seats change too often for the cached page, they are looked up for every request
+        SeatCounterService.attachSeatsAvailable(page.getItems());
+        return page;
     }
 
+    /**
+     * Returns one page of the summaries of the conferences matching the filters of the given form,
+     * for list views which only show the name, the city, the dates and the seats.
+     *
+     * The summaries are read with a projection query, straight from the indexes, so neither the
+     * conferences nor their organizers are loaded. The seats are the ones last reconciled to the
+     * conference by SeatCounterService's reconcile tasks, they may lag behind the bookings by
+     * the reconcile interval of ten seconds plus the delay of the task queue.
+     *
+     * @param conferenceQueryForm A form object representing the query.
+     * @param pageSize The number of summaries to return, DEFAULT_PAGE_SIZE when null.
+     * @param cursor The nextPageToken of the previous page, null for the first page.
+     * @return A page of summaries with the token for the next page, which is null on the last page.
+     * @throws BadRequestException when the filters, the pageSize or the cursor is invalid,
+     *         or when a filter uses the NE operator, which can not be paged.
+     */
+    @ApiMethod(name = "queryConferenceSummaries", path = "queryConferenceSummaries", httpMethod = HttpMethod.POST)
+    public CollectionResponse<ConferenceSummary> queryConferenceSummaries(ConferenceQueryForm conferenceQueryForm,
+            @Named("pageSize") @Nullable final Integer pageSize, @Named("cursor") @Nullable final String cursor)
+            throws BadRequestException {
+        if(conferenceQueryForm == null){
+            conferenceQueryForm = new ConferenceQueryForm();
+        }
+        Query<Conference> query = planPagedQuery(conferenceQueryForm);
+
+        // A property with an equality filter can not be projected, its value is taken from the filter
+        Map<String, Object> equalityFilters = conferenceQueryForm.getEqualityFilters();
+        List<String> projection = new ArrayList<>(SUMMARY_PROPERTIES.size());
+        for (String property : SUMMARY_PROPERTIES) {
+            if (!equalityFilters.containsKey(property)) {
+                projection.add(property);
+            }
+        }
+        query = query.project(projection.toArray(new String[projection.size()]));
+
+        CollectionResponse<Conference> page = fetchPage(query, pageSize, cursor);
+        List<ConferenceSummary> summaries = new ArrayList<>(page.getItems().size());
+        for (Conference conference : page.getItems()) {
+            ConferenceSummary summary = conference.toSummary();
+            for (Map.Entry<String, Object> filter : equalityFilters.entrySet()) {
+                summary.applyEqualityFilter(filter.getKey(), filter.getValue());
+            }
+            summaries.add(summary);
+        }
+        return CollectionResponse.<ConferenceSummary>builder()
+                .setItems(summaries)
+                .setNextPageToken(page.getNextPageToken())
+                .build();
+    }
+
+    /**
+     * Searches the conferences by the words in their name, description, topics and city.
+     *
+     * Every word of the query is a prefix, "java conf" finds "Java Conference". The conferences
+     * matching all the words are ranked by relevance, a match in the name counting the most.
+     *
+     * @param query The words to search for.
+     * @param pageSize The number of conferences to return, DEFAULT_PAGE_SIZE when null.
+     * @param cursor The nextPageToken of the previous page, null for the first page.
+     * @return A page of conferences with the token for the next page, which is null on the last page.
+     * @throws BadRequestException when the pageSize or the cursor is invalid.
+     */
+    @ApiMethod(name = "searchConferences", path = "searchConferences", httpMethod = HttpMethod.GET)
+    public CollectionResponse<Conference> searchConferences(@Named("query") final String query,
+            @Named("pageSize") @Nullable final Integer pageSize, @Named("cursor") @Nullable final String cursor)
+            throws BadRequestException {
+        int limit = getPageLimit(pageSize);
+        int offset = 0;
+        if(cursor != null){
+            try {
+                offset = Integer.parseInt(cursor);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+            if(offset < 0){
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+        }
+
+        List<String> results = SearchIndexService.search(query);
+        int start = Math.min(offset, results.size());
+        int end = start + Math.min(limit, results.size() - start);
+        List<Key<Conference>> conferenceKeys = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            conferenceKeys.add(Key.<Conference>create(results.get(i)));
+        }
+
+        // A single batch get in the order of the ranking, conferences deleted since the search are left out
+        Map<Key<Conference>, Conference> loaded = ofy().load().keys(conferenceKeys);
+        List<Conference> conferences = new ArrayList<>(conferenceKeys.size());
+        for (Key<Conference> conferenceKey : conferenceKeys) {
+            Conference conference = loaded.get(conferenceKey);
+            if(conference != null){
+                conferences.add(conference);
+            }
+        }
+        resolveOrganizers(conferences);
+        SeatCounterService.attachSeatsAvailable(conferences);
+
+        return CollectionResponse.<Conference>builder()
+                .setItems(conferences)
+                .setNextPageToken(end < results.size() ? String.valueOf(end) : null)
+                .build();
+    }
+
+    /**
+     * Returns the conferences running at some time between from and to, ordered by their start date.
+     *
+     * Only the week buckets covering the window are read, with a single query merging them in
+     * start date order, and the conferences are checked against the exact window afterwards.
+     *
+     * @param from The start of the window, now when null.
+     * @param to The end of the window, DEFAULT_UPCOMING_DAYS after from when null.
+     * @param pageSize The maximum number of conferences to return, DEFAULT_PAGE_SIZE when null.
+     * @return The conferences running in the window, the earliest first.
+     * @throws BadRequestException when the window is empty or longer than MAX_UPCOMING_DAYS.
+     */
+    @ApiMethod(name = "getUpcomingConferences", path = "conferences/upcoming", httpMethod = HttpMethod.GET)
+    public List<Conference> getUpcomingConferences(@Named("from") @Nullable Date from,
+            @Named("to") @Nullable Date to, @Named("pageSize") @Nullable Integer pageSize)
+            throws BadRequestException {
+        int limit = getPageLimit(pageSize);
+        long fromTime = from == null ? System.currentTimeMillis() : from.getTime();
+        long toTime = to == null ? fromTime + TimeUnit.DAYS.toMillis(DEFAULT_UPCOMING_DAYS) : to.getTime();
+        if(toTime < fromTime){
+            throw new BadRequestException("The window must not end before it starts.");
+        }
+        if(toTime - fromTime > TimeUnit.DAYS.toMillis(MAX_UPCOMING_DAYS)){
+            throw new BadRequestException("The window must not be longer than " + MAX_UPCOMING_DAYS + " days.");
+        }
+
+        List<Integer> weeks = new ArrayList<>();
+        for (int week = Conference.weekBucket(fromTime); week <= Conference.weekBucket(toTime); week++) {
+            weeks.add(week);
+        }
+        // The IN filter runs one query per bucket merged by startDate in memory. A hybrid query
+        // would only read the keys, which can not be merged by startDate, so the entities are read
+        Query<Conference> query = ofy().load().type(Conference.class)
+                .filter("weekBuckets in", weeks)
+                .order("startDate")
+                .hybrid(false)
+                .chunk(limit);
+
+        // A conference running for several weeks is in several buckets, it is returned once
+        Map<Key<Conference>, Conference> conferences = new LinkedHashMap<>();
+        for (Conference conference : query) {
+            if(conference.getStartDate().getTime() > toTime){
+                break;
+            }
+            Date endDate = conference.getEndDate() == null ? conference.getStartDate() : conference.getEndDate();
+            if(endDate.getTime() >= fromTime){
+                conferences.put(conference.getKey(), conference);
+                if(conferences.size() == limit){
+                    break;
+                }
+            }
+        }
+
+        List<Conference> upcoming = resolveOrganizers(new ArrayList<>(conferences.values()));
+        SeatCounterService.attachSeatsAvailable(upcoming);
+        return upcoming;
+    }
+
+    /**
+     * A page of the conferences changed since a client's last sync.
+     */
+    public static class ConferenceChanges {
+        private final List<Conference> items;
+        private final String nextPageToken;
+        private final Long watermark;
+
+        public ConferenceChanges(List<Conference> items, String nextPageToken, Long watermark) {
+            this.items = items;
+            this.nextPageToken = nextPageToken;
+            this.watermark = watermark;
+        }
+
+        public List<Conference> getItems() {
+            return items;
+        }
+
+        /** The cursor of the next page, null on the last page. */
+        public String getNextPageToken() {
+            return nextPageToken;
+        }
+
+        /** The since of the next sync, only given on the last page. */
+        public Long getWatermark() {
+            return watermark;
+        }
+    }
+
+    /**
+     * Returns the conferences saved after the given time, so that a client keeping the
+     * conferences offline only downloads what has changed since its last sync.
+     *
+     * The client reads all the pages with the same since, then keeps the watermark of the last
+     * page as the since of its next sync. The watermark stays SYNC_SETTLE_MILLIS behind the first
+     * page, so a conference may be sent twice but none that was committing during the sync is missed.
+     *
+     * @param since The watermark of the previous sync in milliseconds, null for all the conferences.
+     * @param pageSize The number of conferences to return, DEFAULT_PAGE_SIZE when null.
+     * @param cursor The nextPageToken of the previous page, null for the first page.
+     * @return A page of changed conferences, the oldest change first.
+     * @throws BadRequestException when the pageSize or the cursor is invalid.
+     */
+    @ApiMethod(name = "getConferenceChanges", path = "conferences/changes", httpMethod = HttpMethod.GET)
+    public ConferenceChanges getConferenceChanges(@Named("since") @Nullable final Long since,
+            @Named("pageSize") @Nullable final Integer pageSize, @Named("cursor") @Nullable final String cursor)
+            throws BadRequestException {
+        // The watermark is taken before the first page and carried in the page tokens: a conference
+        // saved before it is either returned by one of the pages or was saved after the first page
+        long watermark;
+        String queryCursor = null;
+        if(cursor == null){
+            watermark = Math.max(since == null ? 0 : since, System.currentTimeMillis() - SYNC_SETTLE_MILLIS);
+        } else {
+            int separator = cursor.indexOf(':');
+            try {
+                watermark = Long.parseLong(cursor.substring(0, Math.max(separator, 0)));
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+            queryCursor = cursor.substring(separator + 1);
+        }
+
+        Query<Conference> query = ofy().load().type(Conference.class);
+        if(since != null){
+            query = query.filter("lastModified >", new Date(since)).order("lastModified");
+        }
+        CollectionResponse<Conference> page = fetchPage(query, pageSize, queryCursor);
+        List<Conference> conferences = new ArrayList<>(page.getItems());
+        resolveOrganizers(conferences);
+        SeatCounterService.attachSeatsAvailable(conferences);
+
+        if(page.getNextPageToken() == null){
+            return new ConferenceChanges(conferences, null, watermark);
+        }
+        return new ConferenceChanges(conferences, watermark + ":" + page.getNextPageToken(), null);
+    }
+
+    /**
+     * A change of the change feed: the conferences written by a single write, and whether it has
+     * written the profile of the caller.
+     */
+    public static class Change {
+        private final long sequence;
+        private final List<String> conferenceKeys;
+        private final Boolean profileChanged;
+
+        public Change(long sequence, List<String> conferenceKeys, Boolean profileChanged) {
+            this.sequence = sequence;
+            this.conferenceKeys = conferenceKeys;
+            this.profileChanged = profileChanged;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /** The websafe keys of the changed conferences. */
+        public List<String> getConferenceKeys() {
+            return conferenceKeys;
+        }
+
+        /** Whether the profile of the signed in caller has changed. */
+        public Boolean getProfileChanged() {
+            return profileChanged;
+        }
+    }
+
+    /**
+     * A page of the change feed.
+     */
+    public static class ChangeFeed {
+        private final List<Change> items;
+        private final String nextToken;
+        private final Boolean more;
+        private final Boolean resync;
+
+        public ChangeFeed(List<Change> items, String nextToken, Boolean more, Boolean resync) {
+            this.items = items;
+            this.nextToken = nextToken;
+            this.more = more;
+            this.resync = resync;
+        }
+
+        public List<Change> getItems() {
+            return items;
+        }
+
+        /** The sinceToken of the next call. */
+        public String getNextToken() {
+            return nextToken;
+        }
+
+        /** Whether more changes can be read right away with the nextToken. */
+        public Boolean getMore() {
+            return more;
+        }
+
+        /**
+         * Whether changes after the sinceToken have been trimmed from the feed. The client has to
+         * load everything again, and then go on with the nextToken.
+         */
+        public Boolean getResync() {
+            return resync;
+        }
+    }
+
+    /**
+     * Returns the changes of conferences and of the caller's profile after the given token, so that
+     * clients keeping a copy only load what has changed instead of querying all the conferences.
+     *
+     * Every write of createConference, importConferences, the registrations and saveProfile appends a
+     * change to the feed. The changes carry keys only, the client loads the changed conferences.
+     * Writes of other users' profiles are left out. A client without a token starts at the oldest
+     * change kept, changes are kept for a week.
+     *
+     * @param user The user who invokes this method, null when the user is not signed in.
+     * @param sinceToken The nextToken of the previous call, null to start at the oldest change.
+     * @param limit The maximum number of changes to read, DEFAULT_PAGE_SIZE when null.
+     * @return The changes after the token, the oldest first.
+     * @throws BadRequestException when the token or the limit is invalid.
+     */
+    @ApiMethod(name = "getChanges", path = "changes", httpMethod = HttpMethod.GET)
+    public ChangeFeed getChanges(final User user, @Named("sinceToken") @Nullable final String sinceToken,
+            @Named("limit") @Nullable final Integer limit) throws BadRequestException {
+        long since = 0;
+        if(sinceToken != null){
+            try {
+                since = Long.parseLong(sinceToken);
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Invalid sinceToken: " + sinceToken);
+            }
+        }
+        String userId = user == null ? null : getUserId(user);
+
+        ChangeFeedService.Page page = ChangeFeedService.read(since, getPageLimit(limit));
+        List<Change> changes = new ArrayList<>(page.getRecords().size());
+        for (ChangeRecord record : page.getRecords()) {
+            boolean profileChanged = userId != null && userId.equals(record.getProfileUserId());
+            if(profileChanged || !record.getConferenceKeys().isEmpty()){
+                changes.add(new Change(record.getSequence(), record.getConferenceKeys(), profileChanged));
+            }
+        }
+        return new ChangeFeed(changes, String.valueOf(page.getLastSequence()), page.isMore(), page.isResync());
+    }
+
+    /**
+     * Loads the profiles of the organizers of the given conferences with a single batch get
+     * and attaches their display names to the conferences, instead of loading one profile
+     * per conference while the response is serialized.
+     *
+     * @param conferences The conferences to attach the organizers' display names to.
+     * @return The given conferences.
+     */
+    private static <C extends Collection<Conference>> C resolveOrganizers(C conferences) {
+        Set<Key<Profile>> profileKeys = new HashSet<>();
+        for (Conference conference : conferences) {
+            profileKeys.add(conference.getProfileKey());
+        }
+
+        Map<Key<Profile>, Profile> profiles = ofy().load().keys(profileKeys);
+        for (Conference conference : conferences) {
+            conference.attachOrganizer(profiles.get(conference.getProfileKey()));
+        }
+        return conferences;
+    }
+
+    /**
+     * Turns the form into a datastore query, a missing form means no filters at all.
+     *
+     * @param conferenceQueryForm A form object representing the query, may be null.
+     * @return The query for the conferences matching the form.
+     * @throws BadRequestException when the filters can not be run as a single datastore query.
+     */
+    private static Query<Conference> planQuery(ConferenceQueryForm conferenceQueryForm)
+            throws BadRequestException {
+        if(conferenceQueryForm == null){
+            conferenceQueryForm = new ConferenceQueryForm();
+        }
+        try {
+            return conferenceQueryForm.getQuery();
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    /**
+     * Plans the query of the given form for reading it page by page.
+     *
+     * @param conferenceQueryForm The form sent from the client, null for all the conferences.
+     * @return The query with the filters and the sort orders of the form.
+     * @throws BadRequestException when the filters are invalid or when there is a NE filter, the
+     *         datastore has no cursor for such a query so it can only be read by queryConferences.
+     */
+    private static Query<Conference> planPagedQuery(ConferenceQueryForm conferenceQueryForm)
+            throws BadRequestException {
+        if(conferenceQueryForm != null && conferenceQueryForm.hasNotEqualFilter()){
+            throw new BadRequestException("NE filters can not be paged, use queryConferences instead.");
+        }
+        return planQuery(conferenceQueryForm);
+    }
+
+    /**
+     * Returns the number of entities in a page of the given size.
+     *
+     * @param pageSize The page size asked for by the client, DEFAULT_PAGE_SIZE when null.
+     * @return The page size, at most MAX_PAGE_SIZE.
+     * @throws BadRequestException when the pageSize is not greater than zero.
+     */
+    private static int getPageLimit(Integer pageSize) throws BadRequestException {
+        int limit = pageSize == null ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+        if(limit <= 0){
+            throw new BadRequestException("pageSize must be greater than zero, but it was " + pageSize);
+        }
+        return limit;
+    }
+
+    /**
+     * Runs the given query for a single page starting at the given cursor.
+     *
+     * @param query The query to run, with its filters and sort orders already applied.
+     * @param pageSize The number of entities to return, DEFAULT_PAGE_SIZE when null.
+     * @param cursor The websafe cursor to start from, null for the first page.
+     * @return A page of entities with the websafe cursor of the next page.
+     * @throws BadRequestException when the pageSize or the cursor is invalid.
+     */
+    private static <T> CollectionResponse<T> fetchPage(Query<T> query, Integer pageSize, String cursor)
+            throws BadRequestException {
+        int limit = getPageLimit(pageSize);
+        query = query.limit(limit);
+        if(cursor != null){
+            try {
+                query = query.startAt(Cursor.fromWebSafeString(cursor));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+        }
+
+        List<T> items = new ArrayList<>(limit);
+        QueryResultIterator<T> iterator = query.iterator();
+        while (iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+
+        // A short page means that the query is exhausted, so there is no next page to hand out.
+        // Merged queries (NE and IN filters) have no cursor at all, the callers do not page them.
+        Cursor next = items.size() < limit ? null : iterator.getCursor();
+        String nextPageToken = next == null ? null : next.toWebSafeString();
+        return CollectionResponse.<T>builder()
+                .setItems(items)
+                .setNextPageToken(nextPageToken)
+                .build();
+    }
 
 }
@@ -264,7 +264,8 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
         {enumValue: 'CITY', displayName: 'City'},
         {enumValue: 'TOPIC', displayName: 'Topic'},
         {enumValue: 'MONTH', displayName: 'Start month'},
-        {enumValue: 'MAX_ATTENDEES', displayName: 'Max Attendees'}
+        {enumValue: 'MAX_ATTENDEES', displayName: 'Max Attendees'},
+        {enumValue: 'SEATS_AVAILABLE', displayName: 'Seats Available'}
     ]
 
     /**
@@ -281,6 +282,13 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
         {displayName: '!=', enumValue: 'NE'}
     ];
 
+    /**
+     * Holds the number of conferences per value of a field, e.g. facets.CITY = [{value: 'London', count: 3}].
+     * It is loaded once, when the first filter is added.
+     * @type {Object}
+     */
+    $scope.facets = null;
+
     /**
      * Holds the conferences currently displayed in the page.
      * @type {Array}
@@ -340,13 +348,41 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
     $scope.pagination = $scope.pagination || {};
     $scope.pagination.currentPage = 0;
     $scope.pagination.pageSize = 20;
+    /**
+     * Holds the token for the next page that has not been fetched from the server yet.
+     * Null when all the pages have been fetched.
+     * @type {string}
+     */
+    $scope.pagination.nextPageToken = null;
     /**
      * Returns the number of the pages in the pagination.
+     * A page that is still on the server is counted as well, so that it can be navigated to.
      *
      * @returns {number}
      */
     $scope.pagination.numberOfPages = function () {
-        return Math.ceil($scope.conferences.length / $scope.pagination.pageSize);
+        var numberOfPages = Math.ceil($scope.conferences.length / $scope.pagination.pageSize);
+        return $scope.pagination.nextPageToken ? numberOfPages + 1 : numberOfPages;
+    };
+
+    /**
+     * Moves to the given page, fetching it from the server when it has not been fetched yet.
+     *
+     * @param page the zero based index of the page
+     */
+    $scope.pagination.goToPage = function (page) {
+        if (page * $scope.pagination.pageSize >= $scope.conferences.length && $scope.pagination.nextPageToken) {
+            var onSuccess = function () {
+                $scope.pagination.currentPage = page;
+            };
+            if ($scope.selectedTab == 'YOU_HAVE_CREATED') {
+                $scope.getConferencesCreated($scope.pagination.nextPageToken, onSuccess);
+            } else {
+                $scope.queryConferencesAll($scope.pagination.nextPageToken, onSuccess);
+            }
+        } else {
+            $scope.pagination.currentPage = page;
+        }
     };
 
     /**
@@ -382,6 +418,33 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
             operator: $scope.operators[0],
             value: ''
         })
+        if (!$scope.facets) {
+            $scope.getConferenceFacets();
+        }
+    };
+
+    /**
+     * Invokes the conference.getConferenceFacets API and groups the counts by field.
+     * The counts are only a hint for the filters, a failure is just logged.
+     */
+    $scope.getConferenceFacets = function () {
+        $scope.facets = {};
+        gapi.client.conference.getConferenceFacets().
+            execute(function (resp) {
+                $scope.$apply(function () {
+                    if (resp.error) {
+                        $log.error('Failed to get the conference facets : ' + (resp.error.message || ''));
+                        $scope.facets = null;
+                    } else {
+                        angular.forEach(resp.items, function (facet) {
+                            if (!$scope.facets[facet.field]) {
+                                $scope.facets[facet.field] = [];
+                            }
+                            $scope.facets[facet.field].push({value: facet.value, count: facet.count});
+                        });
+                    }
+                });
+            });
     };
 
     /**
@@ -418,9 +481,13 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
     };
 
     /**
-     * Invokes the conference.queryConferences API.
+     * Invokes the conference.queryConferencesPage API.
+     * Only one page is fetched, the following pages are fetched when the user navigates to them.
+     *
+     * @param pageToken the token of the page to fetch, the first page is fetched when it is not given.
+     * @param onSuccess an optional function invoked after the page has been added to the conferences.
      */
-    $scope.queryConferencesAll = function () {
+    $scope.queryConferencesAll = function (pageToken, onSuccess) {
         var sendFilters = {
             filters: []
         }
@@ -434,8 +501,15 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
                 });
             }
         }
+        var request = {
+            filters: sendFilters.filters,
+            pageSize: $scope.pagination.pageSize
+        };
+        if (pageToken) {
+            request.cursor = pageToken;
+        }
         $scope.loading = true;
-        gapi.client.conference.queryConferences(sendFilters).
+        gapi.client.conference.queryConferencesPage(request).
             execute(function (resp) {
                 $scope.$apply(function () {
                     $scope.loading = false;
@@ -452,10 +526,17 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
                         $scope.alertStatus = 'success';
                         $log.info($scope.messages);
 
-                        $scope.conferences = [];
+                        if (!pageToken) {
+                            $scope.conferences = [];
+                            $scope.pagination.currentPage = 0;
+                        }
                         angular.forEach(resp.items, function (conference) {
                             $scope.conferences.push(conference);
                         });
+                        $scope.pagination.nextPageToken = resp.nextPageToken || null;
+                        if (onSuccess) {
+                            onSuccess();
+                        }
                     }
                     $scope.submitted = true;
                 });
@@ -464,10 +545,20 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
 
     /**
      * Invokes the conference.getConferencesCreated method.
+     * Only one page is fetched, the following pages are fetched when the user navigates to them.
+     *
+     * @param pageToken the token of the page to fetch, the first page is fetched when it is not given.
+     * @param onSuccess an optional function invoked after the page has been added to the conferences.
      */
-    $scope.getConferencesCreated = function () {
+    $scope.getConferencesCreated = function (pageToken, onSuccess) {
+        var request = {
+            pageSize: $scope.pagination.pageSize
+        };
+        if (pageToken) {
+            request.cursor = pageToken;
+        }
         $scope.loading = true;
-        gapi.client.conference.getConferencesCreated().
+        gapi.client.conference.getConferencesCreated(request).
             execute(function (resp) {
                 $scope.$apply(function () {
                     $scope.loading = false;
@@ -489,10 +580,17 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
                         $scope.alertStatus = 'success';
                         $log.info($scope.messages);
 
-                        $scope.conferences = [];
+                        if (!pageToken) {
+                            $scope.conferences = [];
+                            $scope.pagination.currentPage = 0;
+                        }
                         angular.forEach(resp.items, function (conference) {
                             $scope.conferences.push(conference);
                         });
+                        $scope.pagination.nextPageToken = resp.nextPageToken || null;
+                        if (onSuccess) {
+                            onSuccess();
+                        }
                     }
                     $scope.submitted = true;
                 });
@@ -500,8 +598,7 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
     };
 
     /**
-     * Retrieves the conferences to attend by calling the conference.getProfile method and
-     * invokes the conference.getConference method n times where n == the number of the conferences to attend.
+     * Retrieves the conferences to attend with a single call to the conference.getConferencesToAttend method.
      */
     $scope.getConferencesAttend = function () {
         $scope.loading = true;
@@ -521,6 +618,8 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
                         }
                     } else {
                         // The request has succeeded.
+                        $scope.pagination.currentPage = 0;
+                        $scope.pagination.nextPageToken = null;
                         $scope.conferences = resp.result.items;
                         $scope.loading = false;
                         $scope.messages = 'Query succeeded : Conferences you will attend (or you have attended)';
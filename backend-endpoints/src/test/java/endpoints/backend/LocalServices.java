@@ -0,0 +1,57 @@
+package endpoints.backend;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+
+import endpoints.backend.service.OfyService;
+
+/**
+ * The App Engine local datastore, memcache and task queue for the tests, with an Objectify
+ * session open on the test thread.
+ *
+ * The datastore is a High Replication one, as in production, for the cross group transactions. It
+ * applies every write immediately, so queries see the entities saved just before.
+ * Queued tasks are not run. The services are bound to the thread which sets them up, other
+ * threads have to be attached to them.
+ */
+public class LocalServices {
+    private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+            new LocalDatastoreServiceTestConfig().setApplyAllHighRepJobPolicy(),
+            new LocalMemcacheServiceTestConfig(),
+            new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private ApiProxy.Environment environment;
+    private Closeable session;
+
+    public void setUp() {
+        helper.setUp();
+        environment = ApiProxy.getCurrentEnvironment();
+        // Registers the entities
+        OfyService.factory();
+        session = ObjectifyService.begin();
+    }
+
+    /**
+     * Makes the services available to the current thread.
+     */
+    public void attachCurrentThread() {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+    }
+
+    public void tearDown() {
+        session.close();
+        helper.tearDown();
+    }
+
+    /**
+     * Returns the number of tasks waiting in the default queue.
+     */
+    public int queuedTasks() {
+        return LocalTaskQueueTestConfig.getLocalTaskQueue().getQueueStateInfo().get("default").getCountTasks();
+    }
+}
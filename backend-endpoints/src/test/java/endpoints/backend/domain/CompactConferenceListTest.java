@@ -0,0 +1,185 @@
+package endpoints.backend.domain;
+
+import com.google.api.server.spi.config.ApiSerializationConfig;
+import com.google.api.server.spi.response.CollectionResponse;
+import com.google.api.server.spi.response.ServletResponseResultWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import endpoints.backend.LocalServices;
+import endpoints.backend.form.ConferenceForm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactConferenceListTest {
+    private static final List<String> CITIES = Arrays.asList("London", "Paris", "Tokyo", "San Francisco");
+    private static final List<String> TOPICS = Arrays.asList("Java", "Android", "Cloud", "Web", "Security");
+    private static final List<String> WORDS = Arrays.asList("conference", "summit", "developer", "mobile",
+            "platform", "scalable", "distributed", "community", "workshop", "keynote", "future", "data");
+
+    private final LocalServices services = new LocalServices();
+
+    @Before
+    public void setUp() {
+        services.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    /**
+     * Both layouts hold the same properties, without the descriptions which only the conferences
+     * have. 100 conferences take 31381 bytes as objects and 14888 bytes in columns, 2.1 times less.
+     */
+    @Test
+    public void columnsAreAtLeastTwiceSmallerThanObjects() throws IOException {
+        List<Conference> conferences = createConferences(100);
+
+        List<Map<String, Object>> items = new ArrayList<>(conferences.size());
+        for (Conference conference : conferences) {
+            items.add(sameFields(conference));
+        }
+        int objects = write(CollectionResponse.<Map<String, Object>>builder()
+                .setItems(items).setNextPageToken("token").build());
+        int columns = write(new CompactConferenceList(conferences, "token"));
+
+        assertTrue("Objects take " + objects + " bytes, columns " + columns, objects >= 2 * columns);
+    }
+
+    @Test
+    public void conferencesAreLaidOutInColumns() {
+        List<Conference> conferences = createConferences(3);
+        CompactConferenceList list = new CompactConferenceList(conferences, null);
+
+        assertEquals(3, list.getNames().size());
+        int topic = 0;
+        for (int i = 0; i < conferences.size(); i++) {
+            Conference conference = conferences.get(i);
+            assertEquals(conference.getWebsafeKey(), list.getWebsafeKeys().get(i));
+            assertEquals(conference.getCity(), list.getCityDictionary().get(list.getCityIndexes().get(i)));
+            for (String expected : conference.getTopics()) {
+                assertEquals(expected, list.getTopicDictionary().get(list.getTopicIndexes().get(topic++)));
+            }
+            assertEquals(conference.getStartDate().getTime(), (long) list.getStartDates().get(i));
+        }
+    }
+
+    private static List<Conference> createConferences(int count) {
+        List<Conference> conferences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Random random = new Random(i);
+            Date startDate = new Date(TimeUnit.DAYS.toMillis(17000 + random.nextInt(365)));
+            ConferenceForm form = new ConferenceForm(words(random, 3) + " " + i, null,
+                    Arrays.asList(pick(random, TOPICS), pick(random, TOPICS)), pick(random, CITIES),
+                    startDate, new Date(startDate.getTime() + TimeUnit.DAYS.toMillis(2)), 100);
+            Conference conference = new Conference(i + 1L, "organizer", form);
+            // As the list endpoints do, so that serializing does not load the organizer
+            conference.attachOrganizer(null);
+            conferences.add(conference);
+        }
+        return conferences;
+    }
+
+    /**
+     * Returns the properties of the conference that CompactConferenceList holds as well, as the
+     * object layout would send them.
+     */
+    private static Map<String, Object> sameFields(Conference conference) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("websafeKey", conference.getWebsafeKey());
+        fields.put("name", conference.getName());
+        fields.put("organizerDisplayName", conference.getOrganizerDisplayName());
+        fields.put("city", conference.getCity());
+        fields.put("topics", conference.getTopics());
+        fields.put("startDate", conference.getStartDate());
+        fields.put("endDate", conference.getEndDate());
+        fields.put("maxAttendees", conference.getMaxAttendees());
+        fields.put("seatsAvailable", conference.getSeatsAvailable());
+        return fields;
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(pick(random, WORDS));
+        }
+        return sb.toString();
+    }
+
+    private static String pick(Random random, List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    /**
+     * Writes the value as JSON with the result writer of Endpoints.
+     *
+     * @return The number of bytes written.
+     */
+    private static int write(Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                bytes.write(b);
+            }
+        };
+        final PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+                HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getOutputStream":
+                                return out;
+                            case "getWriter":
+                                return writer;
+                            case "getCharacterEncoding":
+                                return "UTF-8";
+                            default:
+                                Class<?> type = method.getReturnType();
+                                if (type == boolean.class) {
+                                    return false;
+                                }
+                                if (type == int.class) {
+                                    return 0;
+                                }
+                                return null;
+                        }
+                    }
+                });
+        new ServletResponseResultWriter(response, new ApiSerializationConfig()).write(value);
+        // The writer buffers, whatever it still holds belongs to the response as well
+        writer.flush();
+        out.flush();
+        return bytes.size();
+    }
+}
@@ -0,0 +1,107 @@
+package endpoints.backend.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import endpoints.backend.LocalServices;
+import endpoints.backend.domain.Conference;
+import endpoints.backend.form.ConferenceForm;
+import endpoints.backend.form.ConferenceQueryForm;
+import endpoints.backend.form.ConferenceQueryForm.Field;
+import endpoints.backend.form.ConferenceQueryForm.Filter;
+import endpoints.backend.form.ConferenceQueryForm.Operator;
+
+import static endpoints.backend.service.OfyService.ofy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ConferenceCacheTest {
+    private final LocalServices services = new LocalServices();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        services.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    @Test
+    public void pageIsLoadedOnceUntilInvalidated() {
+        Conference conference = createConference();
+        String queryKey = new ConferenceQueryForm().filter(new Filter(Field.CITY, Operator.EQ, "London")).toString();
+
+        assertEquals("London Day", getPage(queryKey, conference).getItems().get(0).getName());
+        assertEquals(1, loads.get());
+
+        getPage(queryKey, conference);
+        assertEquals("A hit does not load the page", 1, loads.get());
+
+        ConferenceCache.invalidate(conference);
+        getPage(queryKey, conference);
+        assertEquals("An update drops the cached pages", 2, loads.get());
+    }
+
+    @Test
+    public void conferenceIsCachedUntilInvalidated() {
+        Conference conference = createConference();
+        ConferenceCache.getConference(conference.getWebsafeKey());
+
+        ofy().delete().entity(conference).now();
+        assertEquals("London Day", ConferenceCache.getConference(conference.getWebsafeKey()).getName());
+
+        ConferenceCache.invalidate(conference);
+        assertNull(ConferenceCache.getConference(conference.getWebsafeKey()));
+    }
+
+    @Test
+    public void differentFiltersNeverShareAPage() {
+        Conference conference = createConference();
+        String twoFilters = new ConferenceQueryForm()
+                .filter(new Filter(Field.CITY, Operator.EQ, "London"))
+                .filter(new Filter(Field.CITY, Operator.EQ, "Paris"))
+                .toString();
+        String oneFilter = new ConferenceQueryForm()
+                .filter(new Filter(Field.CITY, Operator.EQ, "London&CITY EQ Paris"))
+                .toString();
+        String separatorInValue = new ConferenceQueryForm()
+                .filter(new Filter(Field.CITY, Operator.EQ, "London;CITY EQ 5:Paris"))
+                .toString();
+        assertFalse(twoFilters.equals(oneFilter));
+        assertFalse(twoFilters.equals(separatorInValue));
+
+        getPage(twoFilters, conference);
+        getPage(oneFilter, conference);
+        getPage(separatorInValue, conference);
+        assertEquals(3, loads.get());
+    }
+
+    private ConferenceCache.Page getPage(String queryKey, final Conference conference) {
+        return ConferenceCache.getPage(queryKey, new ConferenceCache.Loader<ConferenceCache.Page, RuntimeException>() {
+            @Override
+            public ConferenceCache.Page load() {
+                loads.incrementAndGet();
+                return new ConferenceCache.Page(Collections.singletonList(conference), null);
+            }
+        });
+    }
+
+    private Conference createConference() {
+        ConferenceForm form = new ConferenceForm("London Day", null, Arrays.asList("Java"), "London",
+                new Date(), new Date(), 10);
+        Conference conference = new Conference(1L, "organizer", form);
+        ofy().save().entity(conference).now();
+        return conference;
+    }
+}
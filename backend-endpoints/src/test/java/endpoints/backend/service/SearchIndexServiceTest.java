@@ -0,0 +1,108 @@
+package endpoints.backend.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import endpoints.backend.LocalServices;
+import endpoints.backend.domain.Conference;
+import endpoints.backend.form.ConferenceForm;
+
+import static endpoints.backend.service.OfyService.ofy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchIndexServiceTest {
+    private final LocalServices services = new LocalServices();
+
+    private long nextId = 1;
+
+    @Before
+    public void setUp() {
+        services.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    @Test
+    public void tokenizeSplitsOnPunctuationAndDropsShortTokens() {
+        assertEquals(Arrays.asList("google", "2016", "cloud"), SearchIndexService.tokenize("Google I/O 2016, Cloud"));
+        assertEquals(Arrays.asList("java", "day"), SearchIndexService.tokenize("JAVA day java-Day"));
+        assertTrue(SearchIndexService.tokenize(null).isEmpty());
+        assertTrue(SearchIndexService.tokenize(" - ").isEmpty());
+    }
+
+    @Test
+    public void everyTermHasToMatch() {
+        Conference javaLondon = createConference("Java Day", "London", "Java");
+        createConference("Java Day", "Paris", "Java");
+        createConference("Cloud Summit", "London", "Cloud");
+
+        assertEquals(Collections.singletonList(javaLondon.getWebsafeKey()),
+                SearchIndexService.search("java london"));
+        assertTrue(SearchIndexService.search("cloud paris").isEmpty());
+        assertTrue(SearchIndexService.search("kotlin").isEmpty());
+        assertTrue(SearchIndexService.search("- !").isEmpty());
+    }
+
+    @Test
+    public void termsArePrefixes() {
+        Conference javaLondon = createConference("Java Day", "London", "Java");
+
+        assertEquals(Collections.singletonList(javaLondon.getWebsafeKey()), SearchIndexService.search("ja lon"));
+        assertTrue(SearchIndexService.search("javascript").isEmpty());
+    }
+
+    @Test
+    public void namesRankAboveTopicsAboveCities() {
+        Conference inCity = createConference("Summit", "Java", "Cloud");
+        Conference inTopic = createConference("Summit", "London", "Java");
+        Conference inName = createConference("Java Summit", "London", "Cloud");
+
+        assertEquals(Arrays.asList(inName.getWebsafeKey(), inTopic.getWebsafeKey(), inCity.getWebsafeKey()),
+                SearchIndexService.search("java summit"));
+    }
+
+    @Test
+    public void commonTermsAreReadCompletely() {
+        List<String> expected = new ArrayList<>();
+        List<Object> entities = new ArrayList<>();
+        for (int i = 0; i < 1100; i++) {
+            Conference conference = newConference("Java Day " + i, i % 2 == 0 ? "London" : "Paris", "Java");
+            entities.add(conference);
+            entities.addAll(SearchIndexService.createPostings(conference));
+            if (i % 2 == 0) {
+                expected.add(conference.getWebsafeKey());
+            }
+        }
+        ofy().save().entities(entities).now();
+
+        assertEquals(1100, SearchIndexService.search("java day").size());
+        List<String> results = SearchIndexService.search("java london");
+        assertEquals(expected.size(), results.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(results));
+    }
+
+    private Conference createConference(String name, String city, String topic) {
+        Conference conference = newConference(name, city, topic);
+        List<Object> entities = new ArrayList<Object>(SearchIndexService.createPostings(conference));
+        entities.add(conference);
+        ofy().save().entities(entities).now();
+        return conference;
+    }
+
+    private Conference newConference(String name, String city, String topic) {
+        ConferenceForm form = new ConferenceForm(name, null, Arrays.asList(topic), city, new Date(), new Date(), 10);
+        return new Conference(nextId++, "organizer", form);
+    }
+}
@@ -0,0 +1,148 @@
+package endpoints.backend.service;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import endpoints.backend.LocalServices;
+import endpoints.backend.domain.Conference;
+import endpoints.backend.domain.SeatShard;
+import endpoints.backend.form.ConferenceForm;
+
+import static endpoints.backend.service.OfyService.ofy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SeatCounterServiceTest {
+    private static final int THREADS = 8;
+
+    private final LocalServices services = new LocalServices();
+
+    @Before
+    public void setUp() {
+        services.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    @Test
+    public void concurrentBookingsAreCountedExactly() throws Exception {
+        Conference conference = createConference(100);
+
+        assertEquals(80, bookConcurrently(conference, 10));
+
+        assertEquals(20, sumShards(conference));
+        assertTrue("A reconcile task is queued", services.queuedTasks() > 0);
+        assertTrue(SeatCounterService.reconcile(conference.getWebsafeKey()));
+        ofy().clear();
+        assertEquals(20, ofy().load().key(conference.getKey()).now().getSeatsAvailable());
+
+        Conference copy = ofy().load().key(conference.getKey()).now();
+        copy.updateSeatsAvailable(0);
+        SeatCounterService.attachSeatsAvailable(Collections.singletonList(copy));
+        assertEquals(20, copy.getSeatsAvailable());
+    }
+
+    @Test
+    public void concurrentBookingsDoNotOverbook() throws Exception {
+        Conference conference = createConference(100);
+
+        assertEquals(100, bookConcurrently(conference, 20));
+
+        assertEquals(0, sumShards(conference));
+        assertTrue(SeatCounterService.reconcile(conference.getWebsafeKey()));
+        ofy().clear();
+        assertEquals(0, ofy().load().key(conference.getKey()).now().getSeatsAvailable());
+    }
+
+    @Test
+    public void reconcileWithoutBookingsDoesNotSave() {
+        Conference conference = createConference(100);
+        ofy().clear();
+        Date lastModified = ofy().load().key(conference.getKey()).now().getLastModified();
+
+        assertTrue(SeatCounterService.reconcile(conference.getWebsafeKey()));
+        ofy().clear();
+
+        assertEquals("An unchanged conference keeps its place in the delta sync",
+                lastModified, ofy().load().key(conference.getKey()).now().getLastModified());
+    }
+
+    private Conference createConference(int seats) {
+        ConferenceForm form = new ConferenceForm("Seats", "Booked from many threads", Arrays.asList("Java"),
+                "London", new Date(), new Date(), seats);
+        Conference conference = new Conference(1L, "organizer", form);
+        List<Object> entities = new ArrayList<Object>(SeatCounterService.createShards(conference));
+        entities.add(conference);
+        ofy().save().entities(entities).now();
+        return conference;
+    }
+
+    /**
+     * Books one seat at a time from THREADS threads, each in its own session as a request would.
+     * @return the number of seats booked.
+     */
+    private int bookConcurrently(final Conference conference, final int bookingsPerThread) throws Exception {
+        final AtomicInteger booked = new AtomicInteger();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    services.attachCurrentThread();
+                    try {
+                        for (int j = 0; j < bookingsPerThread; j++) {
+                            try (Closeable session = ObjectifyService.begin()) {
+                                if (SeatCounterService.bookSeats(conference, 1)) {
+                                    SeatCounterService.seatsChanged(conference, -1);
+                                    booked.incrementAndGet();
+                                }
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+        return booked.get();
+    }
+
+    /**
+     * Sums up the seats of the stored shards. The session of the test thread still holds the shards
+     * as they were created, so it is cleared first.
+     */
+    private int sumShards(Conference conference) {
+        ofy().clear();
+        List<Key<SeatShard>> shardKeys = new ArrayList<>();
+        for (int i = 0; i < conference.getSeatShards(); i++) {
+            shardKeys.add(SeatShard.createKey(conference.getKey(), i));
+        }
+        int seatsAvailable = 0;
+        for (SeatShard shard : ofy().transactionless().load().keys(shardKeys).values()) {
+            seatsAvailable += shard.getSeatsAvailable();
+        }
+        return seatsAvailable;
+    }
+}
@@ -0,0 +1,135 @@
+package endpoints.backend.spi;
+
+import com.google.api.server.spi.response.BadRequestException;
+import com.google.appengine.api.users.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import endpoints.backend.LocalServices;
+import endpoints.backend.domain.Conference;
+import endpoints.backend.form.ConferenceForm;
+import endpoints.backend.form.ConferenceQueryForm;
+import endpoints.backend.form.ConferenceQueryForm.Field;
+import endpoints.backend.form.ConferenceQueryForm.Filter;
+import endpoints.backend.form.ConferenceQueryForm.Operator;
+import endpoints.backend.form.ProfileForm;
+import endpoints.backend.form.ProfileForm.TeeShirtSize;
+
+import static endpoints.backend.service.OfyService.ofy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class ConferenceApiTest {
+    private final LocalServices services = new LocalServices();
+
+    private final ConferenceApi api = new ConferenceApi();
+
+    private long nextId = 1;
+
+    @Before
+    public void setUp() {
+        services.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        services.tearDown();
+    }
+
+    @Test
+    public void notEqualFilterIsSortedByItsFieldThenByName() throws BadRequestException {
+        createConference("Java Day", "Tokyo");
+        createConference("Cloud Summit", "Paris");
+        createConference("Android Day", "London");
+        createConference("Web Summit", "Paris");
+
+        List<Conference> conferences = api.queryConferences(notInLondon());
+
+        assertEquals(Arrays.asList("Cloud Summit", "Web Summit", "Java Day"), names(conferences));
+    }
+
+    @Test
+    public void notEqualFilterIsNotPaged() {
+        createConference("Java Day", "Tokyo");
+        createConference("Cloud Summit", "Paris");
+
+        try {
+            api.queryConferencesPage(notInLondon(), 1, null);
+            fail("A NE query has no cursor for the next page");
+        } catch (BadRequestException expected) {
+        }
+        try {
+            api.queryConferencesCompact(notInLondon(), 1, null);
+            fail("A NE query has no cursor for the next page");
+        } catch (BadRequestException expected) {
+        }
+        try {
+            api.queryConferenceSummaries(notInLondon(), 1, null);
+            fail("A NE query has no cursor for the next page");
+        } catch (BadRequestException expected) {
+        }
+    }
+
+    @Test
+    public void upcomingWindowCoversTwoWeekBuckets() throws BadRequestException {
+        long monday = TimeUnit.DAYS.toMillis(7 * 2500 + 4);
+        createConference("Next Week", "Paris", monday + TimeUnit.DAYS.toMillis(8), 1);
+        createConference("This Week", "London", monday + TimeUnit.DAYS.toMillis(1), 10);
+        createConference("Before", "Tokyo", monday - TimeUnit.DAYS.toMillis(3), 1);
+        createConference("After", "Tokyo", monday + TimeUnit.DAYS.toMillis(20), 1);
+
+        List<Conference> conferences = api.getUpcomingConferences(new Date(monday),
+                new Date(monday + TimeUnit.DAYS.toMillis(10)), null);
+
+        assertEquals("The conference running through both weeks is returned once",
+                Arrays.asList("This Week", "Next Week"), names(conferences));
+    }
+
+    @Test
+    public void renamedOrganizerIsNotAnsweredFromTheCache() throws Exception {
+        User user = new User("ada@example.com", "example.com", "ada");
+        api.saveProfile(user, new ProfileForm("Ada", TeeShirtSize.M));
+        Conference created = api.createConference(user, new ConferenceForm("Java Day", null,
+                Arrays.asList("Java"), "London", new Date(), new Date(), 10));
+        String etag = api.getConference(created.getWebsafeKey(), null).getEtag();
+
+        api.saveProfile(user, new ProfileForm("Ada Lovelace", null));
+        Conference conference = api.getConference(created.getWebsafeKey(), etag);
+
+        assertNotNull("The etag covers the organizer's display name", conference);
+        assertEquals("Ada Lovelace", conference.getOrganizerDisplayName());
+    }
+
+    private static ConferenceQueryForm notInLondon() {
+        return new ConferenceQueryForm().filter(new Filter(Field.CITY, Operator.NE, "London"));
+    }
+
+    private static List<String> names(List<Conference> conferences) {
+        List<String> names = new ArrayList<>(conferences.size());
+        for (Conference conference : conferences) {
+            names.add(conference.getName());
+        }
+        return names;
+    }
+
+    private Conference createConference(String name, String city) {
+        return createConference(name, city, System.currentTimeMillis(), 1);
+    }
+
+    private Conference createConference(String name, String city, long startTime, int days) {
+        ConferenceForm form = new ConferenceForm(name, null, Arrays.asList("Java"), city, new Date(startTime),
+                new Date(startTime + TimeUnit.DAYS.toMillis(days - 1)), 10);
+        Conference conference = new Conference(nextId++, "organizer", form);
+        ofy().save().entity(conference).now();
+        return conference;
+    }
+}